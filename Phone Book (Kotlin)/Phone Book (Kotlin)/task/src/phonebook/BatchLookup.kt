@@ -0,0 +1,44 @@
+package phonebook
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+
+/** Splits the people to look up into one batch per worker and runs the batches on a dedicated pool. */
+class BatchLookup(val workers: Int) : AutoCloseable {
+    private val pool = ForkJoinPool(workers)
+
+    /** Returns every person for which [isFound] holds. [isFound] must be safe to call from several threads. */
+    fun lookup(people: List<String>, isFound: (String) -> Boolean): Set<String> {
+        val found = ConcurrentHashMap.newKeySet<String>()
+        val batchSize = maxOf(1, (people.size + workers - 1) / workers)
+        (people.indices step batchSize)
+            .map { from -> people.subList(from, minOf(from + batchSize, people.size)) }
+            .map { batch -> pool.submit { batch.forEach { if (isFound(it)) found.add(it) } } }
+            .forEach { it.get() }
+        return found
+    }
+
+    override fun close() = pool.shutdown()
+}
+
+/**
+ * Runs [isFound] for every person, in parallel batches when [batch] is set, and keeps the people that were found.
+ * With a [histogram] every single lookup is timed into it.
+ */
+inline fun searchAll(
+    people: List<String>,
+    batch: BatchLookup?,
+    histogram: LatencyHistogram? = null,
+    crossinline isFound: (String) -> Boolean
+): List<String> {
+    if (batch == null) {
+        return if (histogram == null) people.filter { isFound(it) } else people.filter { histogram.record { isFound(it) } }
+    }
+    val found = batch.lookup(people) { if (histogram == null) isFound(it) else histogram.record { isFound(it) } }
+    return people.filter { it in found }
+}
+
+/** Throughput suffix for the summary line, only printed for batched lookups. */
+fun throughput(people: List<String>, searchDuration: Long, batch: BatchLookup?): String =
+    if (batch == null) ""
+    else " Throughput: ${people.size * 1000L / maxOf(1L, searchDuration)} lookups/s (${batch.workers} workers)."
@@ -0,0 +1,95 @@
+package phonebook
+
+import java.util.concurrent.atomic.LongAdder
+import kotlin.math.ceil
+import kotlin.math.ln
+import kotlin.math.roundToInt
+import kotlin.system.measureNanoTime
+
+/**
+ * Blocked Bloom filter over directory names: every name sets its bits inside a single 512-bit block (one
+ * cache line), so rejecting a miss costs one hash and one cache-line read. Sized for [falsePositiveRate] at
+ * [expectedEntries]; confining the bits to one block makes the real rate slightly higher than a classic
+ * filter of the same size.
+ */
+class BloomFilter(expectedEntries: Int, val falsePositiveRate: Double) {
+    private val hashCount: Int
+    private val blocks: LongArray
+
+    private val rejected = LongAdder()
+    private val passed = LongAdder()
+    private val falsePositives = LongAdder()
+
+    init {
+        require(falsePositiveRate > 0.0 && falsePositiveRate < 1.0) { "False positive rate must be in (0, 1)" }
+        val bitsPerEntry = -ln(falsePositiveRate) / (ln(2.0) * ln(2.0))
+        hashCount = (bitsPerEntry * ln(2.0)).roundToInt().coerceIn(1, MAX_HASHES)
+        val blockCount = maxOf(1L, ceil(maxOf(1, expectedEntries) * bitsPerEntry / BLOCK_BITS).toLong())
+        blocks = LongArray(Math.toIntExact(blockCount * BLOCK_LONGS))
+    }
+
+    val footprintBytes: Long get() = blocks.size.toLong() * Long.SIZE_BYTES
+
+    fun add(bytes: ByteArray, from: Int, to: Int) {
+        val hash = NameHashIndex.hash(bytes, from, to)
+        val block = block(hash)
+        forEachBit(hash) { bit -> blocks[block + (bit ushr 6)] = blocks[block + (bit ushr 6)] or (1L shl bit) }
+    }
+
+    /** [key] is a [Directory.collationKey]. */
+    fun mightContain(key: ByteArray): Boolean {
+        val hash = NameHashIndex.hash(key, 0, key.size)
+        val block = block(hash)
+        forEachBit(hash) { bit -> if ((blocks[block + (bit ushr 6)] and (1L shl bit)) == 0L) return false }
+        return true
+    }
+
+    /** [isFound] for the targets the filter cannot rule out, counting rejected, passed and falsely passed targets. */
+    fun check(target: String, isFound: (String) -> Boolean): Boolean {
+        if (!mightContain(Directory.collationKey(target))) {
+            rejected.increment()
+            return false
+        }
+        passed.increment()
+        return isFound(target).also { if (!it) falsePositives.increment() }
+    }
+
+    /**
+     * Summary line for the counters collected by [check]. The time saved is measured by running [isFound] on
+     * the rejected targets afterwards and subtracting what the filter spent rejecting them.
+     */
+    fun summary(people: List<String>, isFound: (String) -> Boolean): String {
+        val rejectedPeople = people.filter { !mightContain(Directory.collationKey(it)) }
+        var filterNanos = 0L
+        var lookupNanos = 0L
+        repeat(2) { // first round warms up both code paths
+            filterNanos = measureNanoTime { rejectedPeople.forEach { mightContain(Directory.collationKey(it)) } }
+            lookupNanos = measureNanoTime { rejectedPeople.forEach { isFound(it) } }
+        }
+        return "Bloom filter (${footprintBytes / 1024} KB, $hashCount hashes, target false positive rate $falsePositiveRate): " +
+                "${rejected.sum()} rejected, ${passed.sum()} passed, ${falsePositives.sum()} false positives. " +
+                "Time saved: ${maxOf(0L, lookupNanos - filterNanos) / 1000} us"
+    }
+
+    private fun block(hash: Long): Int =
+        (((hash ushr 32) * (blocks.size / BLOCK_LONGS)) ushr 32).toInt() * BLOCK_LONGS
+
+    /** Double hashing on the low 32 bits of [hash]; the high bits already picked the block. */
+    private inline fun forEachBit(hash: Long, action: (bit: Int) -> Unit) {
+        val start = hash.toInt()
+        val step = (hash.toInt() ushr 16) or 1
+        for (i in 0 until hashCount) action((start + i * step) and (BLOCK_BITS - 1))
+    }
+
+    companion object {
+        private const val BLOCK_BITS = 512
+        private const val BLOCK_LONGS = BLOCK_BITS / Long.SIZE_BITS
+        private const val MAX_HASHES = 16
+
+        fun build(directory: Directory, falsePositiveRate: Double): BloomFilter {
+            val filter = BloomFilter(directory.size, falsePositiveRate)
+            directory.indices.forEach { filter.add(directory.keyArena, directory.keyStart(it), directory.keyEnd(it)) }
+            return filter
+        }
+    }
+}
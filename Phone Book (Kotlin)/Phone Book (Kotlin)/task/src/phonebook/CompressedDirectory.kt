@@ -0,0 +1,306 @@
+package phonebook
+
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.util.Arrays
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+
+/**
+ * Block-compressed, searchable copy of a directory, sorted by collation key.
+ *
+ * Layout (big-endian):
+ * blocks   [BLOCK_ENTRIES] entries each, deflated. Inside a block every entry is
+ *          (shared key prefix, key suffix, shared name prefix, name suffix, phone delta) with varint lengths,
+ *          front-coded against the previous entry; phones are zigzag varint deltas. The first entry of a block
+ *          shares nothing, so every block decodes on its own.
+ * index    per block: offset, compressed length, uncompressed length, entry count, first key
+ * footer   index offset, block count, entry count, source length, source last modified, applied delta log
+ *          length, version, magic
+ *
+ * A lookup binary-searches the sparse index held in memory and then inflates and scans a single block. The
+ * blocks are mapped in windows of at most [MAX_WINDOW_SIZE] bytes that each end on a block boundary, so files
+ * larger than a single mapping (2 GB) work as well.
+ */
+class CompressedDirectory private constructor(channel: FileChannel, footer: ByteBuffer) {
+    val size: Int = footer.getInt(12)
+    val deltaOffset: Long = footer.getLong(32)
+    private val blockOffsets: LongArray
+    private val compressedLengths: IntArray
+    private val uncompressedLengths: IntArray
+    private val blockEntries: IntArray
+    private val firstKeys: Array<ByteArray>
+    private val blockWindows: IntArray
+    private val windowStarts: LongArray
+    private val windows: Array<ByteBuffer>
+
+    init {
+        val indexOffset = footer.getLong(0)
+        val blockCount = footer.getInt(8)
+        blockOffsets = LongArray(blockCount)
+        compressedLengths = IntArray(blockCount)
+        uncompressedLengths = IntArray(blockCount)
+        blockEntries = IntArray(blockCount)
+        val index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, channel.size() - FOOTER_SIZE - indexOffset)
+        firstKeys = Array(blockCount) { block ->
+            blockOffsets[block] = index.getLong()
+            compressedLengths[block] = index.getInt()
+            uncompressedLengths[block] = index.getInt()
+            blockEntries[block] = index.getInt()
+            ByteArray(index.getInt()).also { index.get(it) }
+        }
+
+        val starts = mutableListOf(0L)
+        blockWindows = IntArray(blockCount) { block ->
+            if (blockOffsets[block] + compressedLengths[block] - starts.last() > MAX_WINDOW_SIZE) starts.add(blockOffsets[block])
+            starts.size - 1
+        }
+        windowStarts = starts.toLongArray()
+        windows = Array(starts.size) { window ->
+            val end = if (window + 1 < starts.size) starts[window + 1] else indexOffset
+            channel.map(FileChannel.MapMode.READ_ONLY, starts[window], end - starts[window])
+        }
+    }
+
+    /** Phone of the entry named [name] (compared by collation key), or `null`. */
+    fun find(name: String): Long? {
+        val target = Directory.collationKey(name)
+        val block = lowerBound(0, firstKeys.size) { if (Arrays.compareUnsigned(firstKeys[it], target) <= 0) -1 else 1 } - 1
+        if (block < 0) return null
+        var phone: Long? = null
+        scan(block) { key, keyLength, _, _, entryPhone ->
+            val cmp = Arrays.compareUnsigned(key, 0, keyLength, target, 0, target.size)
+            if (cmp == 0) phone = entryPhone
+            cmp < 0
+        }
+        return phone
+    }
+
+    /** Up to [limit] `phone name` entries whose name starts with [prefix], in collation order. */
+    fun findAllStartingWith(prefix: String, limit: Int = Int.MAX_VALUE): List<String> {
+        val target = Directory.collationKey(prefix)
+        val found = mutableListOf<String>()
+        var block = maxOf(0, lowerBound(0, firstKeys.size) { if (Arrays.compareUnsigned(firstKeys[it], target) < 0) -1 else 1 } - 1)
+        var more = true
+        while (more && block < firstKeys.size && found.size < limit) {
+            scan(block++) { key, keyLength, name, nameLength, phone ->
+                val cmp = Arrays.compareUnsigned(key, 0, minOf(keyLength, target.size), target, 0, target.size)
+                if (cmp == 0) found.add("$phone ${name.decodeToString(0, nameLength)}")
+                if (cmp > 0) more = false
+                cmp <= 0 && found.size < limit
+            }
+        }
+        return found
+    }
+
+    /** Decodes the entries of [block] in order until [visit] returns false. The arrays are reused between entries. */
+    private inline fun scan(block: Int, visit: (key: ByteArray, keyLength: Int, name: ByteArray, nameLength: Int, phone: Long) -> Boolean) {
+        val bytes = inflate(block)
+        val reader = VarintReader(bytes)
+        var key = ByteArray(64)
+        var name = ByteArray(64)
+        var keyLength = 0
+        var nameLength = 0
+        var phone = 0L
+        repeat(blockEntries[block]) {
+            val sharedKey = reader.varint()
+            val keySuffix = reader.varint()
+            if (sharedKey + keySuffix > key.size) key = key.copyOf(maxOf(key.size * 2, sharedKey + keySuffix))
+            reader.bytes(key, sharedKey, keySuffix)
+            keyLength = sharedKey + keySuffix
+            val sharedName = reader.varint()
+            val nameSuffix = reader.varint()
+            if (sharedName + nameSuffix > name.size) name = name.copyOf(maxOf(name.size * 2, sharedName + nameSuffix))
+            reader.bytes(name, sharedName, nameSuffix)
+            nameLength = sharedName + nameSuffix
+            phone += unzigzag(reader.varlong())
+            if (!visit(key, keyLength, name, nameLength, phone)) return
+        }
+    }
+
+    private fun inflate(block: Int): ByteArray {
+        val window = blockWindows[block]
+        val start = Math.toIntExact(blockOffsets[block] - windowStarts[window])
+        val input = windows[window].duplicate().position(start).limit(start + compressedLengths[block])
+        val output = ByteArray(uncompressedLengths[block])
+        val inflater = Inflater()
+        try {
+            inflater.setInput(input)
+            var filled = 0
+            while (filled < output.size) {
+                val n = inflater.inflate(output, filled, output.size - filled)
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) throw IllegalStateException("Truncated block $block")
+                filled += n
+            }
+        } finally {
+            inflater.end()
+        }
+        return output
+    }
+
+    private class VarintReader(private val bytes: ByteArray) {
+        private var position = 0
+
+        fun varint(): Int = varlong().toInt()
+
+        fun varlong(): Long {
+            var value = 0L
+            var shift = 0
+            while (true) {
+                val b = bytes[position++].toInt()
+                value = value or ((b and 0x7F).toLong() shl shift)
+                if (b >= 0) return value
+                shift += 7
+            }
+        }
+
+        fun bytes(destination: ByteArray, offset: Int, length: Int) {
+            System.arraycopy(bytes, position, destination, offset, length)
+            position += length
+        }
+    }
+
+    companion object {
+        private const val MAGIC = 0x5042435a // "PBCZ"
+        private const val VERSION = 1
+        private const val FOOTER_SIZE = 48
+        private const val MAX_WINDOW_SIZE = 1L shl 30
+        const val BLOCK_ENTRIES = 128
+
+        /** Returns `null` when [file] is missing or was written from a different [source] or delta log length. */
+        fun open(source: File, file: File, deltaOffset: Long = 0): CompressedDirectory? {
+            if (!file.exists() || file.length() < FOOTER_SIZE) return null
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ).use { channel ->
+                val footer = channel.map(FileChannel.MapMode.READ_ONLY, channel.size() - FOOTER_SIZE, FOOTER_SIZE.toLong())
+                when {
+                    footer.getInt(44) != MAGIC || footer.getInt(40) != VERSION -> null
+                    footer.getLong(16) != source.length() || footer.getLong(24) != source.lastModified() -> null
+                    footer.getLong(32) != deltaOffset -> null
+                    else -> CompressedDirectory(channel, footer)
+                }
+            }
+        }
+
+        /**
+         * Writes [source] with the pending [changes] applied to [file] and opens it. The entries are sorted with
+         * [externalMergeSort] within [memoryBudget] and streamed block by block from its output, so the directory
+         * never has to fit in memory.
+         */
+        fun build(source: File, file: File, changes: List<DeltaOp>, deltaOffset: Long, memoryBudget: Long): CompressedDirectory {
+            val sorted = File.createTempFile("directory-sorted", ".txt", file.absoluteFile.parentFile)
+            try {
+                externalMergeSort(source, sorted, memoryBudget, changes, sorted.parentFile)
+                write(sorted, source, file, deltaOffset)
+            } finally {
+                sorted.delete()
+            }
+            return open(source, file, deltaOffset) ?: throw IllegalStateException("Compressed directory $file is unreadable")
+        }
+
+        /** Writes the `phone name` lines of [sorted], ordered by collation key, to [file], stamped with [source] and [deltaOffset]. */
+        private fun write(sorted: File, source: File, file: File, deltaOffset: Long) {
+            val tmp = File(file.path + ".tmp")
+            val index = ByteArrayOutputStream()
+            val indexOut = DataOutputStream(index)
+            var offset = 0L
+            var blockCount = 0
+            var entryCount = 0L
+            DataOutputStream(tmp.outputStream().buffered(1 shl 16)).use { out ->
+                val deflater = Deflater()
+                try {
+                    val block = ArrayList<Entry>(BLOCK_ENTRIES)
+                    fun flush() {
+                        val bytes = encodeBlock(block)
+                        val compressed = deflate(deflater, bytes)
+                        out.write(compressed)
+                        indexOut.writeLong(offset)
+                        indexOut.writeInt(compressed.size)
+                        indexOut.writeInt(bytes.size)
+                        indexOut.writeInt(block.size)
+                        indexOut.writeInt(block[0].key.size)
+                        indexOut.write(block[0].key)
+                        offset += compressed.size
+                        blockCount++
+                        entryCount += block.size
+                        block.clear()
+                    }
+                    sorted.bufferedReader().useLines { lines ->
+                        lines.forEach { line ->
+                            val name = line.substringAfter(' ')
+                            block.add(Entry(line.substringBefore(' ').toLong(), name.encodeToByteArray(), Directory.collationKey(name)))
+                            if (block.size == BLOCK_ENTRIES) flush()
+                        }
+                    }
+                    if (block.isNotEmpty()) flush()
+                } finally {
+                    deflater.end()
+                }
+                if (entryCount > Int.MAX_VALUE) throw IllegalStateException("Directory too large: $entryCount entries, at most ${Int.MAX_VALUE} fit")
+                index.writeTo(out)
+                out.writeLong(offset)
+                out.writeInt(blockCount)
+                out.writeInt(entryCount.toInt())
+                out.writeLong(source.length())
+                out.writeLong(source.lastModified())
+                out.writeLong(deltaOffset)
+                out.writeInt(VERSION)
+                out.writeInt(MAGIC)
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        }
+
+        private class Entry(val phone: Long, val name: ByteArray, val key: ByteArray)
+
+        private fun encodeBlock(entries: List<Entry>): ByteArray {
+            val out = ByteArrayOutputStream()
+            var previous: Entry? = null
+            for (entry in entries) {
+                val sharedKey = previous?.let { sharedPrefix(it.key, entry.key) } ?: 0
+                writeVarint(out, sharedKey.toLong())
+                writeVarint(out, (entry.key.size - sharedKey).toLong())
+                out.write(entry.key, sharedKey, entry.key.size - sharedKey)
+                val sharedName = previous?.let { sharedPrefix(it.name, entry.name) } ?: 0
+                writeVarint(out, sharedName.toLong())
+                writeVarint(out, (entry.name.size - sharedName).toLong())
+                out.write(entry.name, sharedName, entry.name.size - sharedName)
+                writeVarint(out, zigzag(entry.phone - (previous?.phone ?: 0L)))
+                previous = entry
+            }
+            return out.toByteArray()
+        }
+
+        private fun sharedPrefix(a: ByteArray, b: ByteArray): Int {
+            val mismatch = Arrays.mismatch(a, b)
+            return if (mismatch < 0) a.size else mismatch
+        }
+
+        private fun deflate(deflater: Deflater, bytes: ByteArray): ByteArray {
+            deflater.reset()
+            deflater.setInput(bytes)
+            deflater.finish()
+            val out = ByteArrayOutputStream(bytes.size / 2 + 16)
+            val chunk = ByteArray(4096)
+            while (!deflater.finished()) out.write(chunk, 0, deflater.deflate(chunk))
+            return out.toByteArray()
+        }
+
+        private fun writeVarint(out: ByteArrayOutputStream, value: Long) {
+            var rest = value
+            while ((rest and 0x7FL.inv()) != 0L) {
+                out.write(((rest and 0x7F) or 0x80).toInt())
+                rest = rest ushr 7
+            }
+            out.write(rest.toInt())
+        }
+
+        private fun zigzag(value: Long): Long = (value shl 1) xor (value shr 63)
+
+        private fun unzigzag(value: Long): Long = (value ushr 1) xor -(value and 1)
+    }
+}
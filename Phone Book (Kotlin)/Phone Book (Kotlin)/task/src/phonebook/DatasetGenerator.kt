@@ -0,0 +1,149 @@
+package phonebook
+
+import java.io.File
+import java.io.OutputStream
+import kotlin.system.measureTimeMillis
+
+/**
+ * Deterministic source of synthetic `directory.txt` / `find.txt` data. Every entry is a pure function of
+ * [seed] and its index, so directories of any size stream straight to disk and queries can regenerate the
+ * name of any entry without keeping the directory in memory.
+ *
+ * Names are `<first> <last> <index>`, with first and last names drawn from fixed pools either uniformly or
+ * Zipf-distributed (a few very common names, as in real directories). With [duplicateRate] an entry instead
+ * repeats the name of an earlier entry.
+ */
+class DatasetGenerator(
+    private val seed: Long,
+    private val distribution: Distribution = Distribution.UNIFORM,
+    private val duplicateRate: Double = 0.0
+) {
+    enum class Distribution { UNIFORM, ZIPF }
+
+    init {
+        require(duplicateRate in 0.0..0.9) { "Duplicate rate must be between 0 and 0.9" }
+    }
+
+    private val firstCumulative = zipfCumulative(FIRST_NAMES.size)
+    private val lastCumulative = zipfCumulative(LAST_NAMES.size)
+
+    fun name(index: Long): String {
+        var source = index
+        // a duplicate points at a uniformly chosen earlier entry, which may itself be a duplicate
+        while (source > 0 && unitDouble(random(source, DUPLICATE_STREAM)) < duplicateRate) {
+            source = Math.floorMod(random(source, DUPLICATE_TARGET_STREAM), source)
+        }
+        return ownName(source)
+    }
+
+    fun phone(index: Long): Long = 1_000_000L + Math.floorMod(random(index, PHONE_STREAM), 9_999_000_000L)
+
+    /** A name no entry of a directory with [entries] entries can have: its number is out of range. */
+    fun missingName(query: Long, entries: Long): String = ownName(entries + query)
+
+    /** Streams `phone name` lines for entries `0 until entries` to [file]. */
+    fun writeDirectory(file: File, entries: Long) {
+        file.outputStream().buffered(1 shl 20).use { out ->
+            for (index in 0 until entries) {
+                writeAscii(out, phone(index).toString())
+                out.write(' '.code)
+                writeAscii(out, name(index))
+                out.write('\n'.code)
+            }
+        }
+    }
+
+    /**
+     * Streams [queries] names to [file], each a miss with probability [missRatio] and otherwise the name of a
+     * uniformly chosen entry. Returns the number of misses written.
+     */
+    fun writeQueries(file: File, entries: Long, queries: Long, missRatio: Double): Long {
+        require(missRatio in 0.0..1.0) { "Miss ratio must be between 0 and 1" }
+        var misses = 0L
+        file.outputStream().buffered(1 shl 20).use { out ->
+            for (query in 0 until queries) {
+                val miss = entries == 0L || unitDouble(random(query, MISS_STREAM)) < missRatio
+                if (miss) misses++
+                writeAscii(out, if (miss) missingName(query, entries) else name(Math.floorMod(random(query, HIT_STREAM), entries)))
+                out.write('\n'.code)
+            }
+        }
+        return misses
+    }
+
+    private fun ownName(index: Long): String {
+        val first = FIRST_NAMES[pick(random(index, FIRST_NAME_STREAM), firstCumulative, FIRST_NAMES.size)]
+        val last = LAST_NAMES[pick(random(index, LAST_NAME_STREAM), lastCumulative, LAST_NAMES.size)]
+        return "$first $last $index"
+    }
+
+    private fun pick(random: Long, cumulative: DoubleArray, size: Int): Int {
+        if (distribution == Distribution.UNIFORM) return Math.floorMod(random, size.toLong()).toInt()
+        val u = unitDouble(random)
+        return lowerBound(0, size - 1) { if (cumulative[it] < u) -1 else 1 }
+    }
+
+    /** Independent random value per ([index], [stream]) pair: SplitMix64 over the seed and both inputs. */
+    private fun random(index: Long, stream: Long): Long {
+        var z = seed + (index * 0x9E3779B97F4A7C15uL.toLong()) + stream * 0xBF58476D1CE4E5B9uL.toLong()
+        z = (z xor (z ushr 30)) * 0xBF58476D1CE4E5B9uL.toLong()
+        z = (z xor (z ushr 27)) * 0x94D049BB133111EBuL.toLong()
+        return z xor (z ushr 31)
+    }
+
+    private fun unitDouble(random: Long): Double = (random ushr 11) * (1.0 / (1L shl 53))
+
+    private fun writeAscii(out: OutputStream, text: String) {
+        for (c in text) out.write(c.code)
+    }
+
+    companion object {
+        private const val DUPLICATE_STREAM = 1L
+        private const val DUPLICATE_TARGET_STREAM = 2L
+        private const val FIRST_NAME_STREAM = 3L
+        private const val LAST_NAME_STREAM = 4L
+        private const val PHONE_STREAM = 5L
+        private const val MISS_STREAM = 6L
+        private const val HIT_STREAM = 7L
+
+        private val FIRST_NAMES = listOf(
+            "John", "Jane", "Anna", "Bob", "Kenny", "Lucy", "Mark", "Zoe", "Emma", "Liam", "Olivia", "Noah",
+            "Ava", "Elijah", "Sophia", "James", "Mia", "Lucas", "Amelia", "Henry", "Harper", "Jack", "Ella", "Leo",
+            "Chloe", "Owen", "Nora", "Ezra", "Grace", "Theo", "Ruby", "Felix", "Iris", "Hugo", "Ivy", "Oscar"
+        )
+        private val LAST_NAMES = listOf(
+            "Hotel", "Smith", "Doe", "Brown", "Quinn", "Young", "Adams", "Miller", "Johnson", "Williams", "Jones",
+            "Garcia", "Davis", "Wilson", "Moore", "Taylor", "Thomas", "Jackson", "White", "Harris", "Martin",
+            "Clark", "Lewis", "Walker", "Hall", "Allen", "King", "Wright", "Scott", "Green", "Baker", "Nelson"
+        )
+
+        /** Cumulative Zipf (exponent 1) probabilities over ranks `1..size`. */
+        private fun zipfCumulative(size: Int): DoubleArray {
+            val weights = DoubleArray(size) { 1.0 / (it + 1) }
+            val total = weights.sum()
+            var sum = 0.0
+            return DoubleArray(size) { sum += weights[it] / total; sum }
+        }
+    }
+}
+
+fun execGenerateDataset(
+    baseDir: File,
+    entries: Long,
+    queries: Long,
+    seed: Long,
+    distribution: DatasetGenerator.Distribution,
+    duplicateRate: Double,
+    missRatio: Double
+) {
+    println("Generating dataset ($entries entries, $queries queries, seed $seed)...")
+    val generator = DatasetGenerator(seed, distribution, duplicateRate)
+    baseDir.mkdirs()
+    var misses = 0L
+    val duration = measureTimeMillis {
+        generator.writeDirectory(File(baseDir, "directory.txt"), entries)
+        misses = generator.writeQueries(File(baseDir, "find.txt"), entries, queries, missRatio)
+    }
+    println("Wrote ${File(baseDir, "directory.txt").length() / 1024} KB directory and $queries queries " +
+            "(${queries - misses} hits, $misses misses) to $baseDir. Time taken: ${duration.printDuration()}")
+}
@@ -0,0 +1,173 @@
+package phonebook
+
+import java.io.File
+import java.io.FileInputStream
+import java.util.Arrays
+import java.util.concurrent.ConcurrentSkipListMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+
+/** One change to the directory: [phone] is stored under [name], or [name] is removed when [isDelete]. */
+class DeltaOp(val name: String, val phone: Long) {
+    val isDelete: Boolean get() = phone == TOMBSTONE
+
+    companion object {
+        const val TOMBSTONE = -1L
+
+        fun delete(name: String) = DeltaOp(name, TOMBSTONE)
+    }
+}
+
+/**
+ * Append-only log of changes on top of `directory.txt`, one op per line:
+ * `+ <phone> <name>` stores (replacing any entry with the same name), `- <name>` removes.
+ */
+class DeltaLog(val file: File) {
+    val length: Long get() = file.length()
+
+    @Synchronized
+    fun append(op: DeltaOp) {
+        file.appendText(if (op.isDelete) "- ${op.name}\n" else "+ ${op.phone} ${op.name}\n")
+    }
+
+    /** Reads the ops starting at byte [fromOffset], which must be the start of a line. */
+    fun read(fromOffset: Long = 0): List<DeltaOp> {
+        if (!file.exists()) return emptyList()
+        return FileInputStream(file).use { input ->
+            input.channel.position(fromOffset)
+            input.bufferedReader().lineSequence().filter { it.isNotBlank() }.map { parse(it) }.toList()
+        }
+    }
+
+    private fun parse(line: String): DeltaOp = when (line.first()) {
+        '+' -> {
+            val entry = line.substring(1).trim()
+            val phone = entry.substringBefore(" ").toLongOrNull()
+            if (phone == null || phone < 0) throw IllegalStateException("Malformed delta log line: $line")
+            DeltaOp(entry.substringAfter(" ").trim(), phone)
+        }
+        '-' -> DeltaOp.delete(line.substring(1).trim())
+        else -> throw IllegalStateException("Malformed delta log line: $line")
+    }
+}
+
+/**
+ * LSM-style view over a [DirectoryIndex]: changes appended to the [DeltaLog] since the index was written live
+ * in a sorted in-memory table and are looked up first. Once [compactionThreshold] changes are pending, a background
+ * merge writes a new index in one sequential pass over the old index and the sorted changes, so the cost is
+ * proportional to the directory size plus the changes, with no re-sort.
+ */
+class IncrementalIndex(
+    private val source: File,
+    private val indexFile: File,
+    index: DirectoryIndex,
+    log: DeltaLog,
+    private val compactionThreshold: Int = 4096
+) : AutoCloseable {
+    @Volatile
+    private var base: DirectoryIndex = index
+    /** Latest pending op per collation key. */
+    private val memtable = ConcurrentSkipListMap<ByteArray, DeltaOp> { a, b -> Arrays.compareUnsigned(a, b) }
+    private val compactor: ExecutorService = Executors.newSingleThreadExecutor()
+    private var compaction: Future<*>? = null
+    private val logLength = log.length
+
+    init {
+        log.read(base.deltaOffset).forEach { memtable[Directory.collationKey(it.name)] = it }
+        compactIfNeeded()
+    }
+
+    /** Phone stored under [name], or `null` if there is none. */
+    fun find(name: String): Long? {
+        memtable[Directory.collationKey(name)]?.let { return if (it.isDelete) null else it.phone }
+        val index = base
+        val position = index.indexOf(name)
+        return if (position < 0) null else index.phone(position)
+    }
+
+    /** `phone name` of every entry whose name starts with [prefix], in collation order, pending changes included. */
+    fun findAllStartingWith(prefix: String): List<String> {
+        val target = Directory.collationKey(prefix)
+        val index = base
+        val changes = memtable.tailMap(target).entries
+            .takeWhile { it.key.size >= target.size && Arrays.equals(it.key, 0, target.size, target, 0, target.size) }
+            .map { it.key to it.value }
+        val found = mutableListOf<String>()
+        mergeWalk(index, changes, index.findAllStartingWith(prefix), { position ->
+            found.add("${index.phone(position)} ${index.name(position)}")
+        }, { _, op -> found.add("${op.phone} ${op.name}") })
+        return found
+    }
+
+    @Synchronized
+    private fun compactIfNeeded() {
+        if (memtable.size < compactionThreshold || compaction?.isDone == false) return
+        compaction = compact()
+    }
+
+    /** Schedules a merge of all pending changes into a new index file. */
+    @Synchronized
+    fun compact(): Future<*> {
+        val changes = memtable.entries.map { it.key to it.value }
+        return compactor.submit { merge(changes, logLength) }
+    }
+
+    private fun merge(changes: List<Pair<ByteArray, DeltaOp>>, deltaOffset: Long) {
+        val index = base
+        var count = 0
+        mergeWalk(index, changes, 0 until index.size, { count++ }, { _, _ -> count++ })
+
+        val name = ByteArray((0 until index.size).maxOfOrNull { index.nameLength(it) } ?: 0)
+        val key = ByteArray((0 until index.size).maxOfOrNull { index.keyLength(it) } ?: 0)
+        DirectoryIndex.Writer(indexFile, count, source, deltaOffset).use { writer ->
+            mergeWalk(index, changes, 0 until index.size, { position ->
+                index.copyName(position, name)
+                index.copyKey(position, key)
+                writer.add(index.phone(position), name, index.nameLength(position), key, index.keyLength(position))
+            }, { changeKey, op ->
+                val changeName = op.name.encodeToByteArray()
+                writer.add(op.phone, changeName, changeName.size, changeKey, changeKey.size)
+            })
+        }
+
+        base = DirectoryIndex.open(source, indexFile) ?: throw IllegalStateException("Merged index $indexFile is unreadable")
+        // only drop changes the new index contains; later updates to the same names stay pending
+        changes.forEach { (key, op) -> memtable.remove(key, op) }
+    }
+
+    /** Walks the base [positions] and the sorted [changes] in key order; [changes] must lie within the same key range. */
+    private inline fun mergeWalk(
+        index: DirectoryIndex,
+        changes: List<Pair<ByteArray, DeltaOp>>,
+        positions: IntRange,
+        onBase: (position: Int) -> Unit,
+        onInsert: (key: ByteArray, op: DeltaOp) -> Unit
+    ) {
+        var position = positions.first
+        val end = positions.last + 1
+        var change = 0
+        while (position < end || change < changes.size) {
+            val cmp = when {
+                position == end -> 1
+                change == changes.size -> -1
+                else -> index.compareName(position, changes[change].first)
+            }
+            when {
+                cmp < 0 -> onBase(position++)
+                cmp == 0 -> position++ // replaced or deleted by the pending change
+                else -> {
+                    val (key, op) = changes[change++]
+                    if (!op.isDelete) onInsert(key, op)
+                }
+            }
+        }
+    }
+
+    /** Waits for a running merge so the process does not exit halfway through writing the new index. */
+    override fun close() {
+        compactor.shutdown()
+        compactor.awaitTermination(1, TimeUnit.HOURS)
+    }
+}
@@ -0,0 +1,244 @@
+package phonebook
+
+import java.io.File
+import java.nio.ByteBuffer
+import java.text.Normalizer
+import java.util.Arrays
+
+/**
+ * Columnar, read-only view of `directory.txt`: entry `i` has phone `phones[i]` and the UTF-8 name
+ * bytes `nameArena[nameOffsets[i] until nameOffsets[i + 1]]`.
+ *
+ * Every name also has a binary collation key (see [collationKey]), computed once when the directory is
+ * created. All comparisons below work on these keys, so every sort and search agrees on one order and on
+ * which names are equal; targets passed in must be collation keys as well.
+ */
+class Directory(
+    val size: Int,
+    private val phones: LongArray,
+    internal val nameArena: ByteArray,
+    private val nameOffsets: IntArray
+) {
+    internal val keyArena: ByteArray
+    private val keyOffsets = IntArray(size + 1)
+
+    init {
+        var arena = ByteArray(nameOffsets[size])
+        var arenaSize = 0
+        for (id in 0 until size) {
+            val from = nameOffsets[id]
+            val to = nameOffsets[id + 1]
+            if (isAscii(nameArena, from, to)) {
+                if (arenaSize.toLong() + to - from > arena.size) arena = arena.copyOf(grownCapacity(arena.size, arenaSize.toLong() + to - from))
+                for (i in from until to) arena[arenaSize++] = lowerAscii(nameArena[i].toInt()).toByte()
+            } else {
+                val key = collationKey(nameArena.decodeToString(from, to))
+                if (arenaSize.toLong() + key.size > arena.size) arena = arena.copyOf(grownCapacity(arena.size, arenaSize.toLong() + key.size))
+                System.arraycopy(key, 0, arena, arenaSize, key.size)
+                arenaSize += key.size
+            }
+            keyOffsets[id + 1] = arenaSize
+        }
+        keyArena = if (arenaSize == arena.size) arena else arena.copyOf(arenaSize)
+    }
+
+    val indices: IntRange get() = 0 until size
+
+    /** Approximate heap used by the entries and their collation keys, the same estimate as [Builder.footprintBytes]. */
+    val footprintBytes: Long get() = nameOffsets[size].toLong() + keyArena.size + size * (Long.SIZE_BYTES + 2 * Int.SIZE_BYTES).toLong()
+
+    fun phone(id: Int): Long = phones[id]
+
+    fun name(id: Int): String = nameArena.decodeToString(nameOffsets[id], nameOffsets[id + 1])
+
+    fun nameLength(id: Int): Int = nameOffsets[id + 1] - nameOffsets[id]
+
+    fun nameStart(id: Int): Int = nameOffsets[id]
+
+    fun nameEnd(id: Int): Int = nameOffsets[id + 1]
+
+    fun copyName(id: Int, destination: ByteArray, destinationOffset: Int = 0) =
+        System.arraycopy(nameArena, nameOffsets[id], destination, destinationOffset, nameLength(id))
+
+    fun key(id: Int): String = keyArena.decodeToString(keyOffsets[id], keyOffsets[id + 1])
+
+    fun keyLength(id: Int): Int = keyOffsets[id + 1] - keyOffsets[id]
+
+    fun keyStart(id: Int): Int = keyOffsets[id]
+
+    fun keyEnd(id: Int): Int = keyOffsets[id + 1]
+
+    fun copyKey(id: Int, destination: ByteArray, destinationOffset: Int = 0) =
+        System.arraycopy(keyArena, keyOffsets[id], destination, destinationOffset, keyLength(id))
+
+    fun nameEquals(id: Int, target: ByteArray): Boolean =
+        Arrays.equals(keyArena, keyOffsets[id], keyOffsets[id + 1], target, 0, target.size)
+
+    fun nameContains(id: Int, target: ByteArray): Boolean {
+        if (target.isEmpty()) return true
+        val first = target[0]
+        val from = keyOffsets[id]
+        val last = keyOffsets[id + 1] - target.size
+        for (start in from..last) {
+            if (keyArena[start] == first &&
+                Arrays.equals(keyArena, start, start + target.size, target, 0, target.size)
+            ) return true
+        }
+        return false
+    }
+
+    fun compareNames(a: Int, b: Int): Int =
+        Arrays.compareUnsigned(keyArena, keyOffsets[a], keyOffsets[a + 1], keyArena, keyOffsets[b], keyOffsets[b + 1])
+
+    fun compareName(id: Int, target: ByteArray): Int =
+        Arrays.compareUnsigned(keyArena, keyOffsets[id], keyOffsets[id + 1], target, 0, target.size)
+
+    /** Compares only the first `prefix.size` bytes of the key, so 0 means the name starts with [prefix]. */
+    fun comparePrefix(id: Int, prefix: ByteArray): Int {
+        val end = minOf(keyOffsets[id + 1], keyOffsets[id] + prefix.size)
+        return Arrays.compareUnsigned(keyArena, keyOffsets[id], end, prefix, 0, prefix.size)
+    }
+
+    /**
+     * The directory after replaying [ops] in order: entries whose name was changed are dropped and the last
+     * op of each such name is appended unless it is a delete. One pass over the entries, no sorting.
+     */
+    fun applying(ops: List<DeltaOp>): Directory {
+        if (ops.isEmpty()) return this
+        val changes = LinkedHashMap<ByteBuffer, DeltaOp>()
+        ops.forEach { changes[ByteBuffer.wrap(collationKey(it.name))] = it }
+
+        val builder = Builder()
+        for (id in indices) {
+            if (ByteBuffer.wrap(keyArena, keyOffsets[id], keyLength(id)) !in changes) {
+                builder.add(phones[id], nameArena, nameOffsets[id], nameLength(id))
+            }
+        }
+        changes.values.forEach { op ->
+            if (!op.isDelete) op.name.encodeToByteArray().let { builder.add(op.phone, it, 0, it.size) }
+        }
+        return builder.build()
+    }
+
+    companion object {
+        private const val NEWLINE = '\n'.code
+        private const val CARRIAGE_RETURN = '\r'.code
+        private const val SPACE = ' '.code
+        /** The largest array the JVM reliably allocates; name and key offsets are `Int`s, so arenas stop here. */
+        private const val MAX_ARRAY_SIZE = Int.MAX_VALUE - 8
+
+        /** Parses [file] in a single streaming pass without creating a `String` per line. */
+        fun load(file: File): Directory {
+            val builder = Builder()
+            file.inputStream().use { input ->
+                val chunk = ByteArray(1 shl 16)
+                var read = input.read(chunk)
+                while (read > 0) {
+                    for (i in 0 until read) builder.accept(chunk[i].toInt())
+                    read = input.read(chunk)
+                }
+            }
+            return builder.build()
+        }
+
+        /**
+         * Collation form of [name]: NFC-normalized and case-folded, so names differing only in case or in how
+         * accented letters are composed compare equal. Upper- then lower-casing folds letters like `ß` that
+         * have no single-character lower-case partner.
+         */
+        fun collate(name: String): String {
+            if (name.all { it.code < 0x80 }) return name.lowercase()
+            return Normalizer.normalize(Normalizer.normalize(name, Normalizer.Form.NFC).uppercase().lowercase(), Normalizer.Form.NFC)
+        }
+
+        /** UTF-8 bytes of [collate]; comparing them unsigned is the directory's sort order. */
+        fun collationKey(name: String): ByteArray = collate(name).encodeToByteArray()
+
+        private fun isAscii(bytes: ByteArray, from: Int, to: Int): Boolean {
+            for (i in from until to) if (bytes[i] < 0) return false
+            return true
+        }
+
+        private fun lowerAscii(b: Int) = if (b in 'A'.code..'Z'.code) b + ('a' - 'A') else b
+
+        /** Doubled capacity that holds at least [needed] elements, or a clear error once an array cannot. */
+        private fun grownCapacity(current: Int, needed: Long): Int {
+            if (needed > MAX_ARRAY_SIZE) {
+                throw IllegalStateException("Directory too large: needs $needed array elements, at most $MAX_ARRAY_SIZE fit in one arena")
+            }
+            return minOf(maxOf(current * 2L, needed), MAX_ARRAY_SIZE.toLong()).toInt()
+        }
+    }
+
+    /** Accumulates entries from raw `directory.txt` bytes, one byte at a time. */
+    internal class Builder {
+        private var phones = LongArray(1024)
+        private var nameOffsets = IntArray(1025)
+        private var arena = ByteArray(1 shl 16)
+        private var size = 0
+        private var arenaSize = 0
+
+        /** Approximate heap used by the entries accepted so far, including the collation keys built with them. */
+        val footprintBytes: Long get() = 2L * arenaSize + size * (Long.SIZE_BYTES + 2 * Int.SIZE_BYTES).toLong()
+
+        private var phone = 0L
+        private var phoneDigits = 0
+        private var inPhone = true
+        private var lineStart = true
+
+        fun accept(b: Int) {
+            when {
+                b == NEWLINE -> endLine()
+                b == CARRIAGE_RETURN -> return
+                inPhone -> {
+                    lineStart = false
+                    when {
+                        b == SPACE && phoneDigits > 0 -> inPhone = false
+                        b in '0'.code..'9'.code && phone <= (Long.MAX_VALUE - 9) / 10 -> {
+                            phone = phone * 10 + (b - '0'.code)
+                            phoneDigits++
+                        }
+                        else -> throw IllegalStateException("Malformed directory entry ${size + 1}: invalid phone number")
+                    }
+                }
+                b == SPACE && arenaSize == nameOffsets[size] -> return
+                else -> {
+                    if (arenaSize == arena.size) arena = arena.copyOf(grownCapacity(arena.size, arenaSize + 1L))
+                    arena[arenaSize++] = b.toByte()
+                }
+            }
+        }
+
+        fun add(phone: Long, name: ByteArray, from: Int, length: Int) {
+            endLine()
+            if (arenaSize.toLong() + length > arena.size) arena = arena.copyOf(grownCapacity(arena.size, arenaSize.toLong() + length))
+            System.arraycopy(name, from, arena, arenaSize, length)
+            arenaSize += length
+            this.phone = phone
+            lineStart = false
+            endLine()
+        }
+
+        fun build(): Directory {
+            endLine()
+            return Directory(size, phones, arena, nameOffsets)
+        }
+
+        private fun endLine() {
+            if (!lineStart) {
+                while (arenaSize > nameOffsets[size] && arena[arenaSize - 1].toInt() == SPACE) arenaSize--
+                if (size + 1 == phones.size) {
+                    phones = phones.copyOf(minOf(grownCapacity(phones.size, size + 2L), MAX_ARRAY_SIZE - 1))
+                    nameOffsets = nameOffsets.copyOf(phones.size + 1)
+                }
+                phones[size] = phone
+                size++
+                nameOffsets[size] = arenaSize
+            }
+            phone = 0L
+            phoneDigits = 0
+            inPhone = true
+            lineStart = true
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package phonebook
+
+import java.io.Closeable
+import java.io.DataOutputStream
+import java.io.File
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+
+/**
+ * Sorted, memory-mapped index over a `directory.txt` file.
+ *
+ * Layout (big-endian):
+ * header   magic, version, source length, source last modified, applied delta log length, entry count
+ * entries  entry count * (phone: long, name offset: int, name length: int, key offset: int, key length: int),
+ *          sorted by collation key
+ * names    UTF-8 name and collation key bytes referenced by the entry table
+ */
+class DirectoryIndex private constructor(private val buffer: MappedByteBuffer) {
+    val size: Int = buffer.getInt(ENTRY_COUNT_POSITION)
+    private val namesStart = HEADER_SIZE + size * KEY_SIZE
+
+    /** Length of the [DeltaLog] prefix already merged into this index. */
+    val deltaOffset: Long = buffer.getLong(DELTA_OFFSET_POSITION)
+
+    fun phone(position: Int): Long = buffer.getLong(keyPosition(position))
+
+    fun name(position: Int): String {
+        val bytes = ByteArray(nameLength(position))
+        buffer.get(namesStart + nameOffset(position), bytes)
+        return bytes.decodeToString()
+    }
+
+    fun nameLength(position: Int): Int = buffer.getInt(keyPosition(position) + 12)
+
+    fun copyName(position: Int, destination: ByteArray) = buffer.get(namesStart + nameOffset(position), destination, 0, nameLength(position))
+
+    fun keyLength(position: Int): Int = buffer.getInt(keyPosition(position) + 20)
+
+    fun copyKey(position: Int, destination: ByteArray) = buffer.get(namesStart + keyOffset(position), destination, 0, keyLength(position))
+
+    /** Compares the collation key at [position] with [target], which must be a [Directory.collationKey]. */
+    fun compareName(position: Int, target: ByteArray): Int = compareName(position, target, keyLength(position))
+
+    /** Compares only the first `prefix.size` bytes of the key, so 0 means the name starts with [prefix]. */
+    fun comparePrefix(position: Int, prefix: ByteArray): Int =
+        compareName(position, prefix, minOf(keyLength(position), prefix.size))
+
+    fun indexOf(name: String): Int {
+        val target = Directory.collationKey(name)
+        val position = lowerBound(0, size) { compareName(it, target) }
+        return if (position < size && compareName(position, target) == 0) position else -1
+    }
+
+    /** Positions of all entries whose name starts with [prefix]; empty when there is none. */
+    fun findAllStartingWith(prefix: String): IntRange {
+        val target = Directory.collationKey(prefix)
+        val first = lowerBound(0, size) { comparePrefix(it, target) }
+        val last = lowerBound(first, size) { if (comparePrefix(it, target) > 0) 1 else -1 }
+        return first until last
+    }
+
+    private fun compareName(position: Int, target: ByteArray, length: Int): Int {
+        val start = namesStart + keyOffset(position)
+        for (i in 0 until minOf(length, target.size)) {
+            val cmp = (buffer.get(start + i).toInt() and 0xFF) - (target[i].toInt() and 0xFF)
+            if (cmp != 0) return cmp
+        }
+        return length - target.size
+    }
+
+    private fun keyPosition(position: Int) = HEADER_SIZE + position * KEY_SIZE
+
+    private fun nameOffset(position: Int) = buffer.getInt(keyPosition(position) + 8)
+
+    private fun keyOffset(position: Int) = buffer.getInt(keyPosition(position) + 16)
+
+    companion object {
+        private const val MAGIC = 0x50424958 // "PBIX"
+        private const val VERSION = 3
+        private const val DELTA_OFFSET_POSITION = 24
+        private const val ENTRY_COUNT_POSITION = 32
+        private const val HEADER_SIZE = 40
+        private const val KEY_SIZE = 24
+
+        /** Returns `null` when the index is missing or was built from a different version of [source]. */
+        fun open(source: File, indexFile: File): DirectoryIndex? {
+            if (!indexFile.exists() || indexFile.length() < HEADER_SIZE) return null
+            val buffer = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ).use {
+                it.map(FileChannel.MapMode.READ_ONLY, 0, it.size())
+            }
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return null
+            if (buffer.getLong(8) != source.length() || buffer.getLong(16) != source.lastModified()) return null
+            return DirectoryIndex(buffer)
+        }
+
+        /** Writes [directory] in the given name [order], which must be sorted by [Directory.compareNames]. */
+        fun write(directory: Directory, order: IntArray, source: File, indexFile: File, deltaOffset: Long = 0) {
+            val name = ByteArray(order.maxOfOrNull { directory.nameLength(it) } ?: 0)
+            val key = ByteArray(order.maxOfOrNull { directory.keyLength(it) } ?: 0)
+            Writer(indexFile, order.size, source, deltaOffset).use { writer ->
+                order.forEach { id ->
+                    directory.copyName(id, name)
+                    directory.copyKey(id, key)
+                    writer.add(directory.phone(id), name, directory.nameLength(id), key, directory.keyLength(id))
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams exactly [count] entries, already sorted by collation key, into a new index that replaces [indexFile] on
+     * [close]. Names and keys are buffered in a side file because they follow the complete entry table.
+     */
+    class Writer(private val indexFile: File, private val count: Int, source: File, deltaOffset: Long) : Closeable {
+        private val tmp = File(indexFile.path + ".tmp")
+        private val namesTmp = File(indexFile.path + ".names.tmp")
+        private val keys = DataOutputStream(tmp.outputStream().buffered(1 shl 16))
+        private val names = namesTmp.outputStream().buffered(1 shl 16)
+        private var written = 0
+        private var nameOffset = 0
+
+        init {
+            keys.writeInt(MAGIC)
+            keys.writeInt(VERSION)
+            keys.writeLong(source.length())
+            keys.writeLong(source.lastModified())
+            keys.writeLong(deltaOffset)
+            keys.writeInt(count)
+            keys.writeInt(0)
+        }
+
+        fun add(phone: Long, name: ByteArray, nameLength: Int, key: ByteArray, keyLength: Int) {
+            check(written < count) { "More than $count entries written to $indexFile" }
+            keys.writeLong(phone)
+            keys.writeInt(nameOffset)
+            keys.writeInt(nameLength)
+            keys.writeInt(nameOffset + nameLength)
+            keys.writeInt(keyLength)
+            names.write(name, 0, nameLength)
+            names.write(key, 0, keyLength)
+            nameOffset += nameLength + keyLength
+            written++
+        }
+
+        override fun close() {
+            names.close()
+            keys.use { out -> namesTmp.inputStream().use { it.copyTo(out) } }
+            namesTmp.delete()
+            check(written == count) { "Expected $count entries for $indexFile, got $written" }
+            Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package phonebook
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.util.Arrays
+import java.util.PriorityQueue
+
+/**
+ * Sorts the entries of [source] by name into [output] (same `phone name` line format) while holding at most
+ * about [memoryBudget] bytes of entries in memory. Each full buffer is sorted and spilled to a temporary run
+ * file, then the runs are merged with a k-way heap merge, in passes of at most [MAX_FAN_IN] runs. Pending
+ * [changes] from the delta log replace the source entries with the same names and are merged in as one more run.
+ */
+fun externalMergeSort(
+    source: File,
+    output: File,
+    memoryBudget: Long,
+    changes: List<DeltaOp> = emptyList(),
+    tempDir: File? = output.parentFile
+) {
+    val runs = mutableListOf<File>()
+    val removed = changes.map { DeltaOp.delete(it.name) }
+    try {
+        var builder = Directory.Builder()
+        source.inputStream().use { input ->
+            val chunk = ByteArray(1 shl 16)
+            var read = input.read(chunk)
+            while (read > 0) {
+                for (i in 0 until read) {
+                    builder.accept(chunk[i].toInt())
+                    if (chunk[i] == NEWLINE && builder.footprintBytes >= memoryBudget) {
+                        runs.add(spillRun(builder.build().applying(removed), tempDir))
+                        builder = Directory.Builder()
+                    }
+                }
+                read = input.read(chunk)
+            }
+        }
+        val last = builder.build().applying(removed)
+        if (last.size > 0 || runs.isEmpty()) runs.add(spillRun(last, tempDir))
+        if (changes.isNotEmpty()) runs.add(spillRun(Directory.Builder().build().applying(changes), tempDir))
+        mergeRuns(runs, output, (memoryBudget / 4 / MAX_FAN_IN).coerceIn(MIN_BUFFER_SIZE, MAX_BUFFER_SIZE).toInt(), tempDir)
+    } finally {
+        runs.forEach { it.delete() }
+    }
+}
+
+private const val NEWLINE = '\n'.code.toByte()
+
+/** Most runs merged at once, so a merge never holds more open files than this. */
+private const val MAX_FAN_IN = 64
+private const val MIN_BUFFER_SIZE = 4096L
+private const val MAX_BUFFER_SIZE = 1L shl 16
+
+private fun spillRun(run: Directory, tempDir: File?): File {
+    val ids = IntArray(run.size) { it }
+    parallelQuicksort(run, ids)
+    val file = File.createTempFile("directory-run", ".bin", tempDir)
+    DataOutputStream(file.outputStream().buffered(1 shl 16)).use { out ->
+        val name = ByteArray(ids.maxOfOrNull { run.nameLength(it) } ?: 0)
+        val key = ByteArray(ids.maxOfOrNull { run.keyLength(it) } ?: 0)
+        ids.forEach { id ->
+            out.writeLong(run.phone(id))
+            out.writeInt(run.nameLength(id))
+            run.copyName(id, name)
+            out.write(name, 0, run.nameLength(id))
+            out.writeInt(run.keyLength(id))
+            run.copyKey(id, key)
+            out.write(key, 0, run.keyLength(id))
+        }
+    }
+    return file
+}
+
+private class RunCursor(private val input: DataInputStream) : Comparable<RunCursor> {
+    var phone = 0L
+    var name = ByteArray(0)
+    private var key = ByteArray(0)
+
+    fun advance(): Boolean = try {
+        phone = input.readLong()
+        name = ByteArray(input.readInt()).also { input.readFully(it) }
+        key = ByteArray(input.readInt()).also { input.readFully(it) }
+        true
+    } catch (e: EOFException) {
+        false
+    }
+
+    /** Writes the current entry in the run file format of [spillRun]. */
+    fun writeTo(out: DataOutputStream) {
+        out.writeLong(phone)
+        out.writeInt(name.size)
+        out.write(name)
+        out.writeInt(key.size)
+        out.write(key)
+    }
+
+    override fun compareTo(other: RunCursor): Int = Arrays.compareUnsigned(key, other.key)
+}
+
+/**
+ * Merges [runs] into [output]. While there are more than [MAX_FAN_IN], groups of them are first merged into
+ * longer runs; [runs] always lists the files still to be deleted. The read buffers of one merge take
+ * [bufferSize] bytes each.
+ */
+private fun mergeRuns(runs: MutableList<File>, output: File, bufferSize: Int, tempDir: File?) {
+    while (runs.size > MAX_FAN_IN) {
+        val group = runs.take(MAX_FAN_IN)
+        val merged = File.createTempFile("directory-run", ".bin", tempDir).also { runs.add(it) }
+        DataOutputStream(merged.outputStream().buffered(bufferSize)).use { out ->
+            mergeRuns(group, bufferSize) { cursor -> cursor.writeTo(out) }
+        }
+        group.forEach { it.delete() }
+        runs.removeAll(group)
+    }
+    output.outputStream().buffered(1 shl 16).use { out ->
+        mergeRuns(runs, bufferSize) { cursor ->
+            out.write(cursor.phone.toString().encodeToByteArray())
+            out.write(' '.code)
+            out.write(cursor.name)
+            out.write('\n'.code)
+        }
+    }
+}
+
+private inline fun mergeRuns(runs: List<File>, bufferSize: Int, emit: (RunCursor) -> Unit) {
+    val inputs = runs.map { DataInputStream(it.inputStream().buffered(bufferSize)) }
+    val heap = PriorityQueue<RunCursor>(maxOf(1, runs.size))
+    try {
+        inputs.forEach { input ->
+            val cursor = RunCursor(input)
+            if (cursor.advance()) heap.add(cursor)
+        }
+        while (heap.isNotEmpty()) {
+            val cursor = heap.poll()
+            emit(cursor)
+            if (cursor.advance()) heap.add(cursor)
+        }
+    } finally {
+        inputs.forEach { it.close() }
+    }
+}
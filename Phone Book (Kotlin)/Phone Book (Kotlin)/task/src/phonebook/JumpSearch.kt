@@ -0,0 +1,139 @@
+package phonebook
+
+import kotlin.math.sqrt
+import kotlin.system.measureNanoTime
+
+/**
+ * Collation keys of a sorted directory order with their first eight bytes pre-extracted into a [LongArray], so
+ * most search steps are a single unsigned long comparison.
+ */
+class SortedKeys(val directory: Directory, val ids: IntArray) {
+    val size: Int get() = ids.size
+    val prefixes = LongArray(ids.size) { prefixOf(directory.keyArena, directory.keyStart(ids[it]), directory.keyEnd(ids[it])) }
+
+    fun prefixOf(target: ByteArray): Long = prefixOf(target, 0, target.size)
+
+    fun compareAt(position: Int, target: ByteArray, targetPrefix: Long): Int {
+        val cmp = java.lang.Long.compareUnsigned(prefixes[position], targetPrefix)
+        return if (cmp != 0) cmp else directory.compareName(ids[position], target)
+    }
+
+    fun matches(position: Int, target: ByteArray): Boolean = directory.nameEquals(ids[position], target)
+
+    private fun prefixOf(bytes: ByteArray, from: Int, to: Int): Long {
+        var prefix = 0L
+        for (i in 0 until Long.SIZE_BYTES) {
+            prefix = (prefix shl 8) or (if (from + i < to) bytes[from + i].toLong() and 0xFF else 0L)
+        }
+        return prefix
+    }
+}
+
+/** Jump search over [keys] in steps of [blockSize] (defaults to the square root of the size). */
+class JumpSearch(private val keys: SortedKeys, blockSize: Int = 0) {
+    val blockSize: Int = if (blockSize > 0) blockSize else maxOf(1, sqrt(keys.size.toDouble()).toInt())
+
+    /** Returns the position of [target], a [Directory.collationKey], in [keys], or -1. */
+    fun find(target: ByteArray): Int {
+        val prefix = keys.prefixOf(target)
+        val position = jumpSearch(keys.size, blockSize) { keys.compareAt(it, target, prefix) }
+        return if (position >= 0 && keys.matches(position, target)) position else -1
+    }
+}
+
+/**
+ * Interpolation search on the numeric key prefixes, which beats jump and binary search when names are roughly
+ * uniformly distributed. Once the prefixes stop separating the range (many names sharing eight leading bytes)
+ * or the probes stop converging, it finishes with a binary search on the remaining range.
+ */
+fun interpolationSearch(keys: SortedKeys, target: ByteArray): Int {
+    val prefix = keys.prefixOf(target)
+    var low = 0
+    var high = keys.size - 1
+    var probes = 0
+    while (low <= high && probes++ < MAX_INTERPOLATION_PROBES) {
+        val lowKey = keys.prefixes[low]
+        val highKey = keys.prefixes[high]
+        if (java.lang.Long.compareUnsigned(prefix, lowKey) < 0 || java.lang.Long.compareUnsigned(prefix, highKey) > 0) {
+            return -1
+        }
+        if (lowKey == highKey) break
+        val fraction = unsignedToDouble(prefix - lowKey) / unsignedToDouble(highKey - lowKey)
+        val position = (low + fraction * (high - low)).toInt().coerceIn(low, high)
+        val cmp = keys.compareAt(position, target, prefix)
+        when {
+            cmp < 0 -> low = position + 1
+            cmp > 0 -> high = position - 1
+            else -> return if (keys.matches(position, target)) position else -1
+        }
+    }
+    while (low <= high) {
+        val mid = (low + high) ushr 1
+        val cmp = keys.compareAt(mid, target, prefix)
+        when {
+            cmp < 0 -> low = mid + 1
+            cmp > 0 -> high = mid - 1
+            else -> return if (keys.matches(mid, target)) mid else -1
+        }
+    }
+    return -1
+}
+
+private const val MAX_INTERPOLATION_PROBES = 32
+
+private fun unsignedToDouble(value: Long): Double = (value ushr 1).toDouble() * 2.0 + (value and 1L)
+
+/** Jump search over the mapped [index] in steps of [blockSize] (defaults to the square root of the size). */
+fun jumpSearch(index: DirectoryIndex, person: String, blockSize: Int = 0): Int {
+    val target = Directory.collationKey(person)
+    val step = if (blockSize > 0) blockSize else maxOf(1, sqrt(index.size.toDouble()).toInt())
+    return jumpSearch(index.size, step) { index.compareName(it, target) }
+}
+
+/** Jump search over positions `0 until size`; [compareAt] compares the entry at a position with the target. */
+inline fun jumpSearch(size: Int, blockSize: Int = maxOf(1, sqrt(size.toDouble()).toInt()), compareAt: (position: Int) -> Int): Int {
+    var left = 0
+    var right = minOf(blockSize, size) - 1
+    while (right < size - 1 && compareAt(right) < 0) {
+        left = right + 1
+        right = minOf(right + blockSize, size - 1)
+    }
+    for (position in right downTo left) {
+        val cmp = compareAt(position)
+        if (cmp == 0) return position
+        if (cmp < 0) break
+    }
+    return -1
+}
+
+/**
+ * Times jump search (default and, when it differs, configured block size), interpolation search and binary search
+ * on the same keys.
+ */
+fun execJumpSearchBenchmark(people: List<String>, directory: Directory, blockSize: Int, rounds: Int = 5) {
+    println("Start benchmark (jump search variants vs binary search)...")
+    val ids = IntArray(directory.size) { it }.also { parallelQuicksort(directory, it) }
+    val keys = SortedKeys(directory, ids)
+    val targets = people.map { Directory.collationKey(it) }
+    val defaultJump = JumpSearch(keys)
+    val customJump = JumpSearch(keys, blockSize)
+
+    val variants = listOfNotNull<Pair<String, (ByteArray) -> Int>>(
+        "jump search (block ${defaultJump.blockSize})" to { target -> defaultJump.find(target) },
+        ("jump search (block ${customJump.blockSize})" to { target: ByteArray -> customJump.find(target) })
+            .takeIf { customJump.blockSize != defaultJump.blockSize },
+        "interpolation search" to { target -> interpolationSearch(keys, target) },
+        "binary search" to { target -> binarySearch(directory, ids, target, 0, ids.size - 1) }
+    )
+    variants.forEach { (name, search) ->
+        var found = 0
+        var bestNanos = Long.MAX_VALUE
+        repeat(rounds) {
+            var roundFound = 0
+            val nanos = measureNanoTime { targets.forEach { if (search(it) >= 0) roundFound++ } }
+            bestNanos = minOf(bestNanos, nanos)
+            found = roundFound
+        }
+        println("$name: found $found / ${people.size}, best of $rounds: ${bestNanos / 1000} us (${bestNanos / maxOf(1, targets.size)} ns per lookup)")
+    }
+}
@@ -0,0 +1,112 @@
+package phonebook
+
+import java.io.File
+import java.util.Locale
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Lookup latencies in nanoseconds, HdrHistogram style: values below 256 get their own bucket, larger ones are
+ * bucketed by their top 8 significant bits, so every percentile is exact to within 0.8% at a fixed ~60 KB.
+ * Safe to record from several threads.
+ */
+class LatencyHistogram {
+    private val counts = AtomicLongArray(bucketOf(Long.MAX_VALUE) + 1)
+    private val total = AtomicLong()
+    private val sum = AtomicLong()
+    private val max = AtomicLong()
+
+    val count: Long get() = total.get()
+    val maxNanos: Long get() = max.get()
+    val meanNanos: Double get() = if (count == 0L) 0.0 else sum.get().toDouble() / count
+
+    fun recordValue(nanos: Long) {
+        val value = maxOf(0L, nanos)
+        counts.incrementAndGet(bucketOf(value))
+        total.incrementAndGet()
+        sum.addAndGet(value)
+        max.accumulateAndGet(value, ::maxOf)
+    }
+
+    /** Runs [lookup] and records how long it took. */
+    inline fun record(lookup: () -> Boolean): Boolean {
+        val start = System.nanoTime()
+        val found = lookup()
+        recordValue(System.nanoTime() - start)
+        return found
+    }
+
+    /** Smallest recorded latency such that [percentile] percent of all lookups took at most that long. */
+    fun percentileNanos(percentile: Double): Long {
+        val rank = maxOf(1L, Math.ceil(percentile / 100.0 * count).toLong())
+        var seen = 0L
+        for (bucket in 0 until counts.length()) {
+            seen += counts.get(bucket)
+            if (seen >= rank) return minOf(highestValueIn(bucket), maxNanos)
+        }
+        return maxNanos
+    }
+
+    fun summary(): String = String.format(
+        Locale.ROOT, "Latency: p50 %.2f us, p99 %.2f us, p99.9 %.2f us, max %.2f us (%d lookups).",
+        percentileNanos(50.0) / 1000.0, percentileNanos(99.0) / 1000.0, percentileNanos(99.9) / 1000.0,
+        maxNanos / 1000.0, count
+    )
+
+    companion object {
+        private const val SUB_BUCKET_BITS = 8
+        private const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+        private const val HALF_SUB_BUCKETS = SUB_BUCKETS / 2
+
+        private fun bucketOf(value: Long): Int {
+            if (value < SUB_BUCKETS) return value.toInt()
+            val shift = 63 - java.lang.Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1)
+            return shift * HALF_SUB_BUCKETS + (value ushr shift).toInt()
+        }
+
+        private fun highestValueIn(bucket: Int): Long {
+            if (bucket < SUB_BUCKETS) return bucket.toLong()
+            val shift = bucket / HALF_SUB_BUCKETS - 1
+            val mantissa = (bucket - shift * HALF_SUB_BUCKETS).toLong()
+            return ((mantissa + 1) shl shift) - 1
+        }
+    }
+}
+
+/** One [LatencyHistogram] per search algorithm, in the order the algorithms ran. */
+class LatencyRecorder {
+    private val histograms = LinkedHashMap<String, LatencyHistogram>()
+
+    fun histogram(algorithm: String): LatencyHistogram = histograms.getOrPut(algorithm) { LatencyHistogram() }
+
+    /** Writes all histograms to [file], as JSON if its name ends in `.json` and as CSV otherwise. */
+    fun write(file: File) {
+        val rows = histograms.map { (algorithm, histogram) ->
+            listOf(
+                "algorithm" to algorithm,
+                "count" to histogram.count,
+                "mean_ns" to String.format(Locale.ROOT, "%.1f", histogram.meanNanos),
+                "p50_ns" to histogram.percentileNanos(50.0),
+                "p99_ns" to histogram.percentileNanos(99.0),
+                "p999_ns" to histogram.percentileNanos(99.9),
+                "max_ns" to histogram.maxNanos
+            )
+        }
+        file.writeText(if (file.name.endsWith(".json")) json(rows) else csv(rows))
+    }
+
+    private fun csv(rows: List<List<Pair<String, Any>>>): String =
+        (listOf(COLUMNS.joinToString(",")) + rows.map { row -> row.joinToString(",") { "${it.second}" } })
+            .joinToString("\n", postfix = "\n")
+
+    private fun json(rows: List<List<Pair<String, Any>>>): String =
+        rows.joinToString(",\n", "[\n", "\n]\n") { row ->
+            row.joinToString(", ", "  {", "}") { (key, value) ->
+                if (key == "algorithm") "\"$key\": \"${"$value".replace("\"", "\\\"")}\"" else "\"$key\": $value"
+            }
+        }
+
+    companion object {
+        private val COLUMNS = listOf("algorithm", "count", "mean_ns", "p50_ns", "p99_ns", "p999_ns", "max_ns")
+    }
+}
@@ -0,0 +1,91 @@
+package phonebook
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import java.net.InetSocketAddress
+import java.net.URLDecoder
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Long-running HTTP lookup service over a directory that is loaded and indexed once.
+ *
+ * GET /lookup?name=John%20Doe          `phone name` of the entry, or 404
+ * GET /prefix?q=John&limit=10          up to `limit` entries whose name starts with `q`
+ *
+ * A malformed query (a `limit` that is not a non-negative integer, a broken `%` escape) gets a 400.
+ */
+class LookupServer(private val directory: Directory, port: Int) : AutoCloseable {
+    private val hashIndex = NameHashIndex.build(directory)
+    private val sortedIds = IntArray(directory.size) { it }.also { parallelQuicksort(directory, it) }
+    private val executor = lookupExecutor()
+    private val server = HttpServer.create(InetSocketAddress(port), 0)
+
+    val port: Int get() = server.address.port
+
+    init {
+        server.executor = executor
+        server.createContext("/lookup") { exchange -> handle(exchange) { params -> lookup(params) } }
+        server.createContext("/prefix") { exchange -> handle(exchange) { params -> prefix(params) } }
+    }
+
+    fun start() = server.start()
+
+    override fun close() {
+        server.stop(0)
+        executor.shutdown()
+    }
+
+    private fun lookup(params: Map<String, String>): String? {
+        val id = hashIndex.find(Directory.collationKey(params["name"].orEmpty()))
+        return if (id < 0) null else "${directory.phone(id)} ${directory.name(id)}\n"
+    }
+
+    private fun prefix(params: Map<String, String>): String {
+        val limit = params["limit"]?.let { raw ->
+            raw.toIntOrNull()?.takeIf { it >= 0 } ?: throw IllegalArgumentException("Invalid limit \"$raw\"")
+        } ?: DEFAULT_PREFIX_LIMIT
+        return findAllStartingWith(directory, sortedIds, params["q"].orEmpty())
+            .take(limit)
+            .joinToString("") { "${directory.phone(sortedIds[it])} ${directory.name(sortedIds[it])}\n" }
+    }
+
+    private fun handle(exchange: HttpExchange, respond: (Map<String, String>) -> String?) {
+        exchange.use {
+            val (status, body) = if (exchange.requestMethod != "GET") {
+                405 to null
+            } else {
+                try {
+                    respond(queryParams(exchange.requestURI.rawQuery))?.let { 200 to it } ?: (404 to null)
+                } catch (e: IllegalArgumentException) {
+                    400 to "${e.message}\n"
+                }
+            }
+            val bytes = body.orEmpty().encodeToByteArray()
+            exchange.responseHeaders.add("Content-Type", "text/plain; charset=utf-8")
+            exchange.sendResponseHeaders(status, if (bytes.isEmpty()) -1 else bytes.size.toLong())
+            if (bytes.isNotEmpty()) exchange.responseBody.write(bytes)
+        }
+    }
+
+    private fun queryParams(rawQuery: String?): Map<String, String> =
+        rawQuery.orEmpty().split("&").filter { it.isNotEmpty() }.associate { pair ->
+            val key = pair.substringBefore("=")
+            val value = pair.substringAfter("=", "")
+            URLDecoder.decode(key, Charsets.UTF_8) to URLDecoder.decode(value, Charsets.UTF_8)
+        }
+
+    companion object {
+        private const val DEFAULT_PREFIX_LIMIT = 10
+
+        /**
+         * One virtual thread per request when the JDK has them (21+), otherwise a fixed platform thread pool. On
+         * JDK 19 and 20 the method exists but throws unless preview features are enabled, which lands here too.
+         */
+        fun lookupExecutor(): ExecutorService = try {
+            Executors::class.java.getMethod("newVirtualThreadPerTaskExecutor").invoke(null) as ExecutorService
+        } catch (e: ReflectiveOperationException) {
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2)
+        }
+    }
+}
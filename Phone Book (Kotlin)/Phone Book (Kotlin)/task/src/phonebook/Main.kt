@@ -1,177 +1,535 @@
 package phonebook
 
 import java.io.File
-import kotlin.math.sqrt
 import kotlin.system.measureTimeMillis
 
-fun main() {
-    val baseDir = "/Users/marco/Downloads/data"
-    val directoryLines = File("$baseDir/directory.txt").readLines()
+fun main(args: Array<String>) {
+    val quickSort = if (args.contains("-quickSort")) args.getOrNull(args.indexOf("-quickSort") + 1) else null
+    if (quickSort != null && quickSort !in listOf("parallel", "functional")) {
+        println("Unknown quick sort \"$quickSort\", expected parallel or functional.")
+        return
+    }
+
+    val workers = if (args.contains("-workers")) args.getOrNull(args.indexOf("-workers") + 1)?.toIntOrNull() else null
+    if (args.contains("-workers") && (workers == null || workers < 1)) {
+        println("Invalid number of workers, expected a positive integer.")
+        return
+    }
+    val memoryBudgetMb =
+        if (args.contains("-memoryBudget")) args.getOrNull(args.indexOf("-memoryBudget") + 1)?.toLongOrNull() else null
+    if (args.contains("-memoryBudget") && (memoryBudgetMb == null || memoryBudgetMb < 1)) {
+        println("Invalid memory budget, expected a positive number of megabytes.")
+        return
+    }
+    val memoryBudget = memoryBudgetMb?.let { it shl 20 } ?: (Runtime.getRuntime().maxMemory() / 4)
+    val jumpBlockSize = if (args.contains("-jumpBlock")) args.getOrNull(args.indexOf("-jumpBlock") + 1)?.toIntOrNull() else 0
+    if (jumpBlockSize == null || jumpBlockSize < 0) {
+        println("Invalid jump block size, expected a positive integer.")
+        return
+    }
+    val bloomRate = if (args.contains("-bloom")) args.getOrNull(args.indexOf("-bloom") + 1)?.toDoubleOrNull() else null
+    if (args.contains("-bloom") && (bloomRate == null || bloomRate <= 0.0 || bloomRate >= 1.0)) {
+        println("Invalid false positive rate, expected a number between 0 and 1.")
+        return
+    }
+    val fuzzyDistance = if (args.contains("-fuzzy")) args.getOrNull(args.indexOf("-fuzzy") + 1)?.toIntOrNull() else null
+    if (args.contains("-fuzzy") && (fuzzyDistance == null || fuzzyDistance !in 1..2)) {
+        println("Invalid edit distance, expected 1 or 2.")
+        return
+    }
+    val latencyFile = if (args.contains("-latencyOut")) args.getOrNull(args.indexOf("-latencyOut") + 1) else null
+    if (args.contains("-latencyOut") && latencyFile.isNullOrEmpty()) {
+        println("Invalid latency output file, expected a .csv or .json path.")
+        return
+    }
+    val latencies = if (args.contains("-latency") || latencyFile != null) LatencyRecorder() else null
+    val batch = workers?.let { BatchLookup(it) }
+
+    val baseDir = if (args.contains("-dataDir")) args.getOrNull(args.indexOf("-dataDir") + 1) ?: "" else "/Users/marco/Downloads/data"
+    if (baseDir.isEmpty()) {
+        println("Invalid data directory, expected a path.")
+        return
+    }
+
+    if (args.contains("-generate")) {
+        val entries = args.getOrNull(args.indexOf("-generate") + 1)?.toLongOrNull()
+        val queries = if (args.contains("-queries")) args.getOrNull(args.indexOf("-queries") + 1)?.toLongOrNull() else 500L
+        val seed = if (args.contains("-seed")) args.getOrNull(args.indexOf("-seed") + 1)?.toLongOrNull() else 42L
+        val distribution = if (args.contains("-names")) {
+            DatasetGenerator.Distribution.values().find { it.name.equals(args.getOrNull(args.indexOf("-names") + 1), ignoreCase = true) }
+        } else {
+            DatasetGenerator.Distribution.UNIFORM
+        }
+        val duplicateRate = if (args.contains("-duplicates")) args.getOrNull(args.indexOf("-duplicates") + 1)?.toDoubleOrNull() else 0.0
+        val missRatio = if (args.contains("-misses")) args.getOrNull(args.indexOf("-misses") + 1)?.toDoubleOrNull() else 0.4
+        when {
+            entries == null || entries < 0 -> println("Invalid number of entries, expected a non-negative integer.")
+            queries == null || queries < 0 -> println("Invalid number of queries, expected a non-negative integer.")
+            seed == null -> println("Invalid seed, expected an integer.")
+            distribution == null -> println("Unknown name distribution, expected uniform or zipf.")
+            duplicateRate == null || duplicateRate !in 0.0..0.9 -> println("Invalid duplicate rate, expected a number between 0 and 0.9.")
+            missRatio == null || missRatio !in 0.0..1.0 -> println("Invalid miss ratio, expected a number between 0 and 1.")
+            else -> execGenerateDataset(File(baseDir), entries, queries, seed, distribution, duplicateRate, missRatio)
+        }
+        return
+    }
+
+    val directoryFile = File("$baseDir/directory.txt")
+    val indexFile = File("$baseDir/directory.idx")
+    // the mapped index skips both sorts on later runs, so it is opt-in and the default run times every stage
+    val useIndex = args.contains("-index")
+    val deltaLog = DeltaLog(File("$baseDir/directory.delta"))
+
+    if (args.contains("-add")) {
+        val entry = args.getOrNull(args.indexOf("-add") + 1)?.trim().orEmpty()
+        val phone = entry.substringBefore(" ").toLongOrNull()
+        if (phone == null || phone < 0 || !entry.contains(" ")) {
+            println("Invalid entry, expected \"<phone> <name>\".")
+            return
+        }
+        deltaLog.append(DeltaOp(entry.substringAfter(" ").trim(), phone))
+    }
+    if (args.contains("-remove")) {
+        val name = args.getOrNull(args.indexOf("-remove") + 1)?.trim()
+        if (name.isNullOrEmpty()) {
+            println("Invalid name, expected the name of the entry to remove.")
+            return
+        }
+        deltaLog.append(DeltaOp.delete(name))
+    }
+    if (args.contains("-compressed")) {
+        // a fresh .pbz is opened from its footer stamp alone; a stale one is rebuilt by streaming an external sort
+        execCompressedSearch(
+            File("$baseDir/find.txt").readLines(), directoryFile, File("$baseDir/directory.pbz"), deltaLog, memoryBudget,
+            args.getOrNull(args.indexOf("-prefix") + 1).takeIf { args.contains("-prefix") }, batch, latencies
+        )
+        if (latencyFile != null) latencies?.write(File(latencyFile))
+        batch?.close()
+        return
+    }
+
+    val changes = deltaLog.read()
+    val directory = Directory.load(directoryFile).applying(changes)
     val sortedDirectoryFile = File("$baseDir/sorted_directory.txt")
+
+    if (args.contains("-serve")) {
+        val port = args.getOrNull(args.indexOf("-serve") + 1)?.toIntOrNull()
+        if (port == null || port !in 0..65535) {
+            println("Invalid port, expected a number between 0 and 65535.")
+            return
+        }
+        val server: LookupServer
+        val startDuration = measureTimeMillis {
+            server = LookupServer(directory, port)
+            server.start()
+        }
+        println("Serving ${directory.size} entries on port ${server.port}. Startup time: ${startDuration.printDuration()}")
+        return
+    }
+
     val people = File("$baseDir/find.txt").readLines()
 
-    val linearSearchDuration = execLinearSearch(people, directoryLines)
+    val linearSearchDuration = execLinearSearch(people, directory, batch, latencies, args.contains("-swarScan"))
+
+    if (args.contains("-multiPatternScan")) {
+        println()
+        execMultiPatternScan(people, directory)
+    }
 
     println()
-    execBubbleSortAndJumpSearch(people, directoryLines, sortedDirectoryFile, linearSearchDuration)
+    execBubbleSortAndJumpSearch(
+        people, directory, directoryFile, sortedDirectoryFile,
+        // the base index alone is only usable once every logged change has been merged into it
+        if (useIndex) DirectoryIndex.open(directoryFile, indexFile)?.takeIf { it.deltaOffset == deltaLog.length } else null,
+        linearSearchDuration, memoryBudget, changes, jumpBlockSize, batch, latencies
+    )
 
     println()
-    execQuickSortAndBinarySearch(people, sortedDirectoryFile, directoryLines)
+    execQuickSortAndBinarySearch(
+        people, directoryFile, indexFile.takeIf { useIndex }, deltaLog, directory, quickSort == "parallel", bloomRate, batch, latencies
+    )
 
     println()
-    execHashTableSearch(people, directoryLines)
+    execHashTableSearch(people, directory, bloomRate, batch, latencies)
+
+    if (args.contains("-prefix")) {
+        println()
+        execPrefixSearch(args.getOrNull(args.indexOf("-prefix") + 1) ?: "", directory, directoryFile, indexFile.takeIf { useIndex }, deltaLog)
+    }
+
+    if (args.contains("-jumpBenchmark")) {
+        println()
+        execJumpSearchBenchmark(people, directory, jumpBlockSize)
+    }
+
+    if (args.contains("-hashIndex")) {
+        println()
+        execHashIndexSearch(people, directory, batch, latencies)
+    }
+
+    if (args.contains("-radixTree")) {
+        println()
+        execRadixTreeSearch(people, directory, args.getOrNull(args.indexOf("-prefix") + 1).takeIf { args.contains("-prefix") }, batch, latencies)
+    }
+
+    if (fuzzyDistance != null) {
+        println()
+        execFuzzySearch(people, directory, fuzzyDistance, batch, latencies)
+    }
+
+    if (latencyFile != null) latencies?.write(File(latencyFile))
+
+    batch?.close()
 }
 
-fun execLinearSearch(people: List<String>, directoryLines: List<String>): Long {
-    println("Start searching (linear search)...")
-    val foundPeoples = mutableListOf<String>()
+fun execLinearSearch(
+    people: List<String>,
+    directory: Directory,
+    batch: BatchLookup? = null,
+    latencies: LatencyRecorder? = null,
+    swar: Boolean = false
+): Long {
+    println(if (swar) "Start searching (linear search, SWAR scan)..." else "Start searching (linear search)...")
+    val histogram = latencies?.histogram(if (swar) "linear search (SWAR)" else "linear search")
+    val foundPeoples: List<String>
     val linSearchDuration = measureTimeMillis {
-        linearSearch(people, directoryLines, foundPeoples)
+        foundPeoples = if (swar) {
+            searchAll(people, batch, histogram) { target -> swarContains(directory, Directory.collationKey(target)) }
+        } else {
+            linearSearch(people, directory, batch, histogram)
+        }
     }
-    println("Found ${foundPeoples.size} / ${people.size} entries. Time taken: ${linSearchDuration.printDuration()}")
+    println("Found ${foundPeoples.size} / ${people.size} entries. Time taken: ${linSearchDuration.printDuration()}" +
+            throughput(people, linSearchDuration, batch))
+    histogram?.let { println(it.summary()) }
     return linSearchDuration
 }
 
-private fun linearSearch(
-    people: List<String>,
-    directoryLines: List<String>,
-    foundPeoples: MutableList<String>
-) =
-    people.forEach { target ->
-        directoryLines.forEach { line ->
-            if (line.contains(target) && !foundPeoples.contains(target)) {
-                foundPeoples.add(target)
-            }
-        }
+private fun linearSearch(people: List<String>, directory: Directory, batch: BatchLookup?, histogram: LatencyHistogram?) =
+    searchAll(people, batch, histogram) { target -> linearSearch(directory, Directory.collationKey(target)) }
+
+fun linearSearch(directory: Directory, target: ByteArray): Boolean =
+    directory.indices.any { directory.nameContains(it, target) }
+
+fun execMultiPatternScan(people: List<String>, directory: Directory) {
+    println("Start searching (multi-pattern scan)...")
+    val automaton: AhoCorasick
+    val createDuration = measureTimeMillis {
+        automaton = AhoCorasick(people.map { Directory.collationKey(it) })
+    }
+
+    val foundPeoples: List<String>
+    val scanDuration = measureTimeMillis {
+        foundPeoples = multiPatternScan(people, automaton, directory)
     }
 
+    println("Found ${foundPeoples.size} / ${people.size} entries. Time taken: ${(createDuration + scanDuration).printDuration()}")
+    println("Creating time: ${createDuration.printDuration()}")
+    println("Searching time: ${scanDuration.printDuration()}")
+}
+
 fun execBubbleSortAndJumpSearch(
     people: List<String>,
-    directoryLines: List<String>,
+    directory: Directory,
+    directoryFile: File,
     sortedDirectoryFile: File,
-    linearSearchDuration: Long
+    index: DirectoryIndex?,
+    linearSearchDuration: Long,
+    memoryBudget: Long,
+    changes: List<DeltaOp> = emptyList(),
+    jumpBlockSize: Int = 0,
+    batch: BatchLookup? = null,
+    latencies: LatencyRecorder? = null
 ) {
     println("Start searching (bubble sort + jump search)...")
-    val bubbleSortedDirLines =
-        if (sortedDirectoryFile.exists()) sortedDirectoryFile.readLines().toMutableList()
-        else directoryLines.toMutableList()
+    val histogram = latencies?.histogram("jump search")
+    var sortedDirectory = directory
+    var sortedIds = IntArray(0)
 
     val startDuration = System.currentTimeMillis()
     var isBubbleSorted = false
-    if (!sortedDirectoryFile.exists()) {
-        isBubbleSorted = bubbleSort(bubbleSortedDirLines, startDuration, linearSearchDuration)
+    if (index == null) {
+        sortedIds = IntArray(directory.size) { it }
+        isBubbleSorted = directory.size <= BUBBLE_SORT_LIMIT &&
+                bubbleSort(directory, sortedIds, startDuration, linearSearchDuration)
+        if (!isBubbleSorted && directory.footprintBytes <= memoryBudget) {
+            parallelQuicksort(directory, sortedIds)
+        } else if (!isBubbleSorted) {
+            // over budget: spill sorted runs and merge them. This bounds the sort itself; main has already
+            // loaded the whole directory for the linear search, so it does not make the program fit the budget
+            externalMergeSort(directoryFile, sortedDirectoryFile, memoryBudget, changes)
+            sortedDirectory = Directory.load(sortedDirectoryFile)
+            sortedIds = IntArray(sortedDirectory.size) { it }
+        }
     }
+    val jumpSearch = JumpSearch(SortedKeys(sortedDirectory, sortedIds), jumpBlockSize)
     val bubbleSortDuration = System.currentTimeMillis() - startDuration
 
-//    if (!sortedDirectoryFile.exists()) sortedDirectoryFile.writeText(bubbleSortedDirLines.joinToString("\n"))
-
-    val foundPeoples: MutableList<String> = mutableListOf()
+    val foundPeoples: List<String>
     val jumpSearchDuration = measureTimeMillis {
-        if (!isBubbleSorted) {
-            // linearSearch
-            linearSearch(people, directoryLines, foundPeoples)
+        foundPeoples = if (index != null) {
+            searchAll(people, batch, histogram) { person -> jumpSearch(index, person, jumpBlockSize) >= 0 }
         } else {
-            // jumpSearch
-            people.forEach { person ->
-                val jumpSize = sqrt(bubbleSortedDirLines.size.toDouble()).toInt()
-                var lastLeft = -1
-                var lastRight = -1
-                var left = 0
-                var right: Int = jumpSize
-                while (lastLeft != left && lastRight != right) {
-                    lastLeft = left
-                    lastRight = right
-                    if (right < bubbleSortedDirLines.size && bubbleSortedDirLines[right].substringAfter(" ").trim()
-                            .compareTo(person, ignoreCase = true) < 0
-                    ) {
-                        left = right
-                        right += jumpSize
-                        if (right >= bubbleSortedDirLines.size) {
-                            right = bubbleSortedDirLines.size - 1
-                        }
-                    }
-                }
-
-                if (bubbleSortedDirLines.subList(left, right + 1).any { it.substringAfter(" ").trim() == person }) {
-                    foundPeoples.add(person)
-                }
-            }
+            searchAll(people, batch, histogram) { person -> jumpSearch.find(Directory.collationKey(person)) >= 0 }
         }
     }
 
-    println("Found ${foundPeoples.size} / ${people.size} entries. Time taken: ${(bubbleSortDuration + jumpSearchDuration).printDuration()}")
+    println("Found ${foundPeoples.size} / ${people.size} entries. Time taken: ${(bubbleSortDuration + jumpSearchDuration).printDuration()}" +
+            throughput(people, jumpSearchDuration, batch))
     println("Sorting time: ${bubbleSortDuration.printDuration()}")
     println("Searching time: ${jumpSearchDuration.printDuration()}")
+    histogram?.let { println(it.summary()) }
 }
 
 
-fun execQuickSortAndBinarySearch(people: List<String>, sortedDirectoryFile: File, directoryLines: List<String>) {
+fun execQuickSortAndBinarySearch(
+    people: List<String>,
+    directoryFile: File,
+    indexFile: File?,
+    deltaLog: DeltaLog,
+    directory: Directory,
+    parallelSort: Boolean = false,
+    bloomRate: Double? = null,
+    batch: BatchLookup? = null,
+    latencies: LatencyRecorder? = null
+) {
     println("Start searching (quick sort + binary search)...")
-
-    var quickSortedDirLines: List<String> = listOf()
-    var quickSortDuration = 0L
-
-    if (!sortedDirectoryFile.exists()) {
-        quickSortDuration = measureTimeMillis {
-            quickSortedDirLines = quicksort(
-                if (sortedDirectoryFile.exists()) sortedDirectoryFile.readLines()
-                    .toMutableList() else directoryLines.toMutableList()
-            )
+    val histogram = latencies?.histogram("binary search")
+
+    var quickSortedIds = IntArray(0)
+    var index: IncrementalIndex? = null
+    var bloom: BloomFilter? = null
+
+    // a fresh on-disk index replaces the sort: mapping it and replaying the newer changes is all that is left to do
+    val quickSortDuration = measureTimeMillis {
+        val base = indexFile?.let { DirectoryIndex.open(directoryFile, it) }
+        if (base != null) index = IncrementalIndex(directoryFile, indexFile, base, deltaLog)
+        if (index == null) {
+            quickSortedIds = if (parallelSort) {
+                IntArray(directory.size) { it }.also { parallelQuicksort(directory, it) }
+            } else {
+                quicksort(directory, directory.indices.toList()).toIntArray()
+            }
         }
+        bloom = bloomRate?.let { BloomFilter.build(directory, it) }
     }
-//    if (!sortedDirectoryFile.exists()) sortedDirectoryFile.writeText(quickSortedDirLines.joinToString("\n"))
 
-    val foundPeoples: MutableList<String> = mutableListOf()
+    val mappedIndex = index
+    val filter = bloom
+    val isFound = { target: String ->
+        if (mappedIndex != null) mappedIndex.find(target) != null
+        else binarySearch(directory, quickSortedIds, Directory.collationKey(target), 0, quickSortedIds.size - 1) >= 0
+    }
+    val foundPeoples: List<String>
     val binarySearchDuration = measureTimeMillis {
-        people.forEach { target ->
-            val foundIndex = binarySearch(quickSortedDirLines, target, 0, quickSortedDirLines.size - 1)
-            if (foundIndex >= 0) foundPeoples.add(target)
-        }
+        foundPeoples = searchAll(people, batch, histogram) { target -> filter?.check(target, isFound) ?: isFound(target) }
     }
 
-    println("Found ${foundPeoples.size} / ${people.size} entries. Time taken: ${(quickSortDuration + binarySearchDuration).printDuration()}")
+    println("Found ${foundPeoples.size} / ${people.size} entries. Time taken: ${(quickSortDuration + binarySearchDuration).printDuration()}" +
+            throughput(people, binarySearchDuration, batch))
     println("Sorting time: ${quickSortDuration.printDuration()}")
     println("Searching time: ${binarySearchDuration.printDuration()}")
+    histogram?.let { println(it.summary()) }
+    filter?.let { println(it.summary(people, isFound)) }
 
+    if (mappedIndex != null) mappedIndex.close()
+    else if (indexFile != null) DirectoryIndex.write(directory, quickSortedIds, directoryFile, indexFile, deltaLog.length)
 }
 
-fun execHashTableSearch(people: List<String>, directoryLines: List<String>) {
+/**
+ * Lists the entries starting with [prefix] from [directory], which has the logged changes applied. With an
+ * [indexFile] the mapped index is used instead and the changes not yet merged into it are replayed on top.
+ */
+fun execPrefixSearch(prefix: String, directory: Directory, directoryFile: File, indexFile: File?, deltaLog: DeltaLog, limit: Int = 10) {
+    println("Start searching (prefix \"$prefix\")...")
+    val entries: List<String>
+    val prefixSearchDuration = measureTimeMillis {
+        val base = indexFile?.let { DirectoryIndex.open(directoryFile, it) }
+        entries = if (base != null) {
+            IncrementalIndex(directoryFile, indexFile, base, deltaLog).use { it.findAllStartingWith(prefix) }
+        } else {
+            val sortedIds = IntArray(directory.size) { it }.also { parallelQuicksort(directory, it) }
+            findAllStartingWith(directory, sortedIds, prefix).map { "${directory.phone(sortedIds[it])} ${directory.name(sortedIds[it])}" }
+        }
+    }
+    println("Found ${entries.size} entries. Time taken: ${prefixSearchDuration.printDuration()}")
+    entries.take(limit).forEach { println(it) }
+    if (entries.size > limit) println("...")
+}
+
+fun execHashTableSearch(
+    people: List<String>,
+    directory: Directory,
+    bloomRate: Double? = null,
+    batch: BatchLookup? = null,
+    latencies: LatencyRecorder? = null
+) {
     println("Start searching (hash table)...")
-    val hashTable = HashMap<String, String>(directoryLines.size)
+    val histogram = latencies?.histogram("hash table")
+    val hashTable = HashMap<String, Int>(directory.size)
+    var bloom: BloomFilter? = null
     val createDuration = measureTimeMillis {
-        directoryLines.forEach { line ->
-            hashTable[line.substringAfter(" ")] = line
+        directory.indices.forEach { id ->
+            hashTable[directory.key(id)] = id
         }
+        bloom = bloomRate?.let { BloomFilter.build(directory, it) }
     }
 
-    val foundPeoples: MutableList<String> = mutableListOf()
+    val filter = bloom
+    val isFound = { target: String -> Directory.collate(target) in hashTable }
+    val foundPeoples: List<String>
     val hashTableSearchDuration = measureTimeMillis {
-        people.forEach { target -> hashTable[target]?.let { foundPeoples.add(it) } }
+        foundPeoples = searchAll(people, batch, histogram) { target -> filter?.check(target, isFound) ?: isFound(target) }
     }
 
-    println("Found ${foundPeoples.size} / ${people.size} entries. Time taken: ${(createDuration + hashTableSearchDuration).printDuration()}")
+    println("Found ${foundPeoples.size} / ${people.size} entries. Time taken: ${(createDuration + hashTableSearchDuration).printDuration()}" +
+            throughput(people, hashTableSearchDuration, batch))
     println("Creating time: ${createDuration.printDuration()}")
     println("Searching time: ${hashTableSearchDuration.printDuration()}")
+    histogram?.let { println(it.summary()) }
+    filter?.let { println(it.summary(people, isFound)) }
+}
+
+fun execHashIndexSearch(people: List<String>, directory: Directory, batch: BatchLookup? = null, latencies: LatencyRecorder? = null) {
+    println("Start searching (open-addressing hash table)...")
+    val histogram = latencies?.histogram("open-addressing hash table")
+    val hashIndex: NameHashIndex
+    val createDuration = measureTimeMillis {
+        hashIndex = NameHashIndex.build(directory)
+    }
+
+    val foundPeoples: List<String>
+    val hashIndexSearchDuration = measureTimeMillis {
+        foundPeoples = searchAll(people, batch, histogram) { target -> target in hashIndex }
+    }
+
+    println("Found ${foundPeoples.size} / ${people.size} entries. Time taken: ${(createDuration + hashIndexSearchDuration).printDuration()}" +
+            throughput(people, hashIndexSearchDuration, batch))
+    println("Creating time: ${createDuration.printDuration()}")
+    println("Searching time: ${hashIndexSearchDuration.printDuration()}")
+    histogram?.let { println(it.summary()) }
+    println("Table size: ${hashIndex.footprintBytes / 1024} KB (HashMap estimate: ${NameHashIndex.hashMapFootprintBytes(directory) / 1024} KB)")
+}
+
+fun execRadixTreeSearch(
+    people: List<String>,
+    directory: Directory,
+    prefix: String? = null,
+    batch: BatchLookup? = null,
+    latencies: LatencyRecorder? = null
+) {
+    println("Start searching (radix tree)...")
+    val histogram = latencies?.histogram("radix tree")
+    val tree: NameRadixTree
+    val createDuration = measureTimeMillis {
+        tree = NameRadixTree.build(directory)
+    }
+
+    val foundPeoples: List<String>
+    val treeSearchDuration = measureTimeMillis {
+        foundPeoples = searchAll(people, batch, histogram) { target -> target in tree }
+    }
+
+    println("Found ${foundPeoples.size} / ${people.size} entries. Time taken: ${(createDuration + treeSearchDuration).printDuration()}" +
+            throughput(people, treeSearchDuration, batch))
+    println("Creating time: ${createDuration.printDuration()}")
+    println("Searching time: ${treeSearchDuration.printDuration()}")
+    histogram?.let { println(it.summary()) }
+    println("Tree size: ${tree.footprintBytes / 1024} KB in ${tree.nodeCount} nodes (HashMap estimate: ${NameHashIndex.hashMapFootprintBytes(directory) / 1024} KB)")
+    if (prefix != null) {
+        val ids: List<Int>
+        val prefixDuration = measureTimeMillis { ids = tree.findAllStartingWith(prefix) }
+        println("Found ${ids.size} entries starting with \"$prefix\". Time taken: ${prefixDuration.printDuration()}")
+    }
+}
+
+fun execFuzzySearch(
+    people: List<String>,
+    directory: Directory,
+    maxDistance: Int,
+    batch: BatchLookup? = null,
+    latencies: LatencyRecorder? = null
+) {
+    println("Start searching (fuzzy search, edit distance $maxDistance)...")
+    val histogram = latencies?.histogram("fuzzy search")
+    val tree: NameRadixTree
+    val createDuration = measureTimeMillis {
+        tree = NameRadixTree.build(directory)
+    }
+
+    val foundPeoples: List<String>
+    val fuzzySearchDuration = measureTimeMillis {
+        foundPeoples = searchAll(people, batch, histogram) { target -> tree.findClosest(target, maxDistance) >= 0 }
+    }
+
+    val exactMatches = foundPeoples.count { it in tree }
+    println("Found ${foundPeoples.size} / ${people.size} entries. Time taken: ${(createDuration + fuzzySearchDuration).printDuration()}" +
+            throughput(people, fuzzySearchDuration, batch))
+    println("Creating time: ${createDuration.printDuration()}")
+    println("Searching time: ${fuzzySearchDuration.printDuration()}")
+    histogram?.let { println(it.summary()) }
+    println("Exact matches: $exactMatches, matches with typos: ${foundPeoples.size - exactMatches}")
+}
+
+/**
+ * Searches the `.pbz` copy of [directoryFile]. When that copy is missing or stale it is rebuilt from an external
+ * sort within [memoryBudget], so the directory is never loaded into memory as a whole.
+ */
+fun execCompressedSearch(
+    people: List<String>,
+    directoryFile: File,
+    compressedFile: File,
+    deltaLog: DeltaLog,
+    memoryBudget: Long,
+    prefix: String? = null,
+    batch: BatchLookup? = null,
+    latencies: LatencyRecorder? = null
+) {
+    println("Start searching (compressed directory)...")
+    val histogram = latencies?.histogram("compressed directory")
+    val compressed: CompressedDirectory
+    val createDuration = measureTimeMillis {
+        val deltaOffset = deltaLog.length
+        compressed = CompressedDirectory.open(directoryFile, compressedFile, deltaOffset)
+            ?: CompressedDirectory.build(directoryFile, compressedFile, deltaLog.read(), deltaOffset, memoryBudget)
+    }
+
+    val foundPeoples: List<String>
+    val compressedSearchDuration = measureTimeMillis {
+        foundPeoples = searchAll(people, batch, histogram) { target -> compressed.find(target) != null }
+    }
+
+    println("Found ${foundPeoples.size} / ${people.size} entries. Time taken: ${(createDuration + compressedSearchDuration).printDuration()}" +
+            throughput(people, compressedSearchDuration, batch))
+    println("Creating time: ${createDuration.printDuration()}")
+    println("Searching time: ${compressedSearchDuration.printDuration()}")
+    histogram?.let { println(it.summary()) }
+    println("File size: ${compressedFile.length() / 1024} KB (${directoryFile.name}: ${directoryFile.length() / 1024} KB)")
+    if (prefix != null) {
+        val entries: List<String>
+        val prefixDuration = measureTimeMillis { entries = compressed.findAllStartingWith(prefix) }
+        println("Found ${entries.size} entries starting with \"$prefix\". Time taken: ${prefixDuration.printDuration()}")
+        entries.take(10).forEach { println(it) }
+        if (entries.size > 10) println("...")
+    }
 }
 
 fun Long.printDuration(): String = String.format("%1\$tM min. %1\$tS sec. %1\$tL ms.", this)
 
-fun bubbleSort(directory: MutableList<String>, startMilliseconds: Long, linearSearchDuration: Long): Boolean {
+private const val BUBBLE_SORT_LIMIT = 10_000
+
+fun bubbleSort(directory: Directory, ids: IntArray, startMilliseconds: Long, linearSearchDuration: Long): Boolean {
     var swapped: Boolean
 
-    for (pass in directory.indices) {
+    for (pass in ids.indices) {
         swapped = false
 
         val tempDuration = System.currentTimeMillis() - startMilliseconds
         if (tempDuration > (linearSearchDuration * 10)) return false
 
-        for (currentPosition in 0 until (directory.size - pass - 1)) {
-            val currentElementNamePart = directory[currentPosition].substringAfter(" ").trim()
-            val nextElementNamePart = directory[currentPosition + 1].substringAfter(" ").trim()
-
-            if (currentElementNamePart.compareTo(nextElementNamePart, ignoreCase = true) > 0) {
-                directory[currentPosition] =
-                    directory[currentPosition + 1].also { directory[currentPosition + 1] = directory[currentPosition] }
+        for (currentPosition in 0 until (ids.size - pass - 1)) {
+            if (directory.compareNames(ids[currentPosition], ids[currentPosition + 1]) > 0) {
+                ids[currentPosition] = ids[currentPosition + 1].also { ids[currentPosition + 1] = ids[currentPosition] }
                 swapped = true
             }
         }
@@ -181,24 +539,37 @@ fun bubbleSort(directory: MutableList<String>, startMilliseconds: Long, linearSe
     return true
 }
 
-fun quicksort(list: List<String>): List<String> {
-    if (list.size < 2) return list
+fun quicksort(directory: Directory, ids: List<Int>): List<Int> {
+    if (ids.size < 2) return ids
 
-    val pivot = list[list.size / 2].substringAfter(" ")
-    val less = list.filter { it.substringAfter(" ") < pivot }
-    val equal = list.filter { it.substringAfter(" ") == pivot }
-    val greater = list.filter { it.substringAfter(" ") > pivot }
+    val pivot = ids[ids.size / 2]
+    val less = ids.filter { directory.compareNames(it, pivot) < 0 }
+    val equal = ids.filter { directory.compareNames(it, pivot) == 0 }
+    val greater = ids.filter { directory.compareNames(it, pivot) > 0 }
 
-    return quicksort(less) + equal + quicksort(greater)
+    return quicksort(directory, less) + equal + quicksort(directory, greater)
 }
 
-fun binarySearch(list: List<String>, target: String, start: Int, end: Int): Int {
-    if (start > end) return -1 // base
+fun binarySearch(directory: Directory, sortedIds: IntArray, target: ByteArray, start: Int, end: Int): Int {
+    val position = lowerBound(start, end + 1) { directory.compareName(sortedIds[it], target) }
+    return if (position <= end && directory.nameEquals(sortedIds[position], target)) position else -1
+}
+
+/** Positions of all entries whose name starts with [prefix]; empty when there is none. */
+fun findAllStartingWith(directory: Directory, sortedIds: IntArray, prefix: String): IntRange {
+    val target = Directory.collationKey(prefix)
+    val first = lowerBound(0, sortedIds.size) { directory.comparePrefix(sortedIds[it], target) }
+    val last = lowerBound(first, sortedIds.size) { if (directory.comparePrefix(sortedIds[it], target) > 0) 1 else -1 }
+    return first until last
+}
 
-    val mid = (start + end) / 2
-    return when {
-        list[mid].substringAfter(" ").contains(target) -> mid
-        list[mid].substringAfter(" ") > target -> binarySearch(list, target, start, mid - 1)
-        else -> binarySearch(list, target, mid + 1, end)
+/** First position in `from until to` for which [compareAt] is not negative, or [to] if there is none. */
+inline fun lowerBound(from: Int, to: Int, compareAt: (position: Int) -> Int): Int {
+    var low = from
+    var high = to
+    while (low < high) {
+        val mid = (low + high) ushr 1
+        if (compareAt(mid) < 0) low = mid + 1 else high = mid
     }
+    return low
 }
@@ -0,0 +1,127 @@
+package phonebook
+
+/**
+ * Aho-Corasick automaton over UTF-8 patterns. Children are kept as sibling lists in primitive arrays,
+ * except for the root which gets a dense table since nearly every scanned byte passes through it.
+ */
+class AhoCorasick(patterns: List<ByteArray>) {
+    private var firstChild = IntArray(64) { NONE }
+    private var nextSibling = IntArray(64) { NONE }
+    private var label = ByteArray(64)
+    private var failure = IntArray(64)
+    private var outputLink = IntArray(64) { NONE }
+    private var terminal = BooleanArray(64)
+    private var stateCount = 1
+    private val rootTransitions = IntArray(256)
+
+    /** Terminal state of each pattern, in the order the patterns were given. */
+    val patternStates: IntArray = IntArray(patterns.size)
+
+    init {
+        patterns.forEachIndexed { i, pattern -> patternStates[i] = insert(pattern) }
+        buildFailureLinks()
+    }
+
+    /** Feeds `bytes[from until to]` through the automaton and reports the terminal state of every match. */
+    inline fun scan(bytes: ByteArray, from: Int, to: Int, onMatch: (state: Int) -> Unit) {
+        var state = ROOT
+        for (i in from until to) {
+            state = next(state, bytes[i])
+            var output = if (isTerminal(state)) state else outputLinkOf(state)
+            while (output != NONE) {
+                onMatch(output)
+                output = outputLinkOf(output)
+            }
+        }
+    }
+
+    fun next(state: Int, b: Byte): Int {
+        var current = state
+        while (current != ROOT) {
+            val child = child(current, b)
+            if (child != NONE) return child
+            current = failure[current]
+        }
+        return rootTransitions[b.toInt() and 0xFF]
+    }
+
+    fun isTerminal(state: Int): Boolean = terminal[state]
+
+    fun outputLinkOf(state: Int): Int = outputLink[state]
+
+    private fun child(state: Int, b: Byte): Int {
+        var child = firstChild[state]
+        while (child != NONE && label[child] != b) child = nextSibling[child]
+        return child
+    }
+
+    private fun insert(pattern: ByteArray): Int {
+        var state = ROOT
+        pattern.forEach { b ->
+            var child = child(state, b)
+            if (child == NONE) {
+                child = newState(b)
+                nextSibling[child] = firstChild[state]
+                firstChild[state] = child
+            }
+            state = child
+        }
+        terminal[state] = true
+        return state
+    }
+
+    private fun newState(b: Byte): Int {
+        if (stateCount == label.size) {
+            val capacity = label.size * 2
+            firstChild = firstChild.copyOf(capacity).also { it.fill(NONE, stateCount, capacity) }
+            nextSibling = nextSibling.copyOf(capacity).also { it.fill(NONE, stateCount, capacity) }
+            outputLink = outputLink.copyOf(capacity).also { it.fill(NONE, stateCount, capacity) }
+            label = label.copyOf(capacity)
+            failure = failure.copyOf(capacity)
+            terminal = terminal.copyOf(capacity)
+        }
+        label[stateCount] = b
+        return stateCount++
+    }
+
+    private fun buildFailureLinks() {
+        val queue = IntArray(stateCount)
+        var head = 0
+        var tail = 0
+        var child = firstChild[ROOT]
+        while (child != NONE) {
+            rootTransitions[label[child].toInt() and 0xFF] = child
+            failure[child] = ROOT
+            queue[tail++] = child
+            child = nextSibling[child]
+        }
+        while (head < tail) {
+            val state = queue[head++]
+            child = firstChild[state]
+            while (child != NONE) {
+                val fallback = next(failure[state], label[child])
+                failure[child] = fallback
+                outputLink[child] = if (terminal[fallback]) fallback else outputLink[fallback]
+                queue[tail++] = child
+                child = nextSibling[child]
+            }
+        }
+    }
+
+    companion object {
+        const val ROOT = 0
+        const val NONE = -1
+    }
+}
+
+/**
+ * Single pass over all directory names matching every person at once, with [automaton] built over
+ * [people]. Follows the `contains` semantics of the linear search.
+ */
+fun multiPatternScan(people: List<String>, automaton: AhoCorasick, directory: Directory): List<String> {
+    val matchedStates = HashSet<Int>()
+    directory.indices.forEach { id ->
+        automaton.scan(directory.keyArena, directory.keyStart(id), directory.keyEnd(id)) { matchedStates.add(it) }
+    }
+    return people.filterIndexed { i, _ -> automaton.patternStates[i] in matchedStates }
+}
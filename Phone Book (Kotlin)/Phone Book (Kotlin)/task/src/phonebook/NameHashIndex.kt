@@ -0,0 +1,71 @@
+package phonebook
+
+import java.lang.invoke.MethodHandles
+import java.util.stream.IntStream
+
+/**
+ * Linear probing hash table from collation key to entry id. Slots hold the precomputed 64-bit name hash and the
+ * entry id, so a probe only touches the name bytes in [directory] when the full hash matches.
+ */
+class NameHashIndex private constructor(private val directory: Directory, capacity: Int) {
+    private val mask = capacity - 1
+    private val hashes = LongArray(capacity)
+    private val ids = IntArray(capacity) { EMPTY }
+
+    val footprintBytes: Long get() = hashes.size * (Long.SIZE_BYTES + Int.SIZE_BYTES).toLong()
+
+    /** Id of the entry whose collation key is [key], or -1. */
+    fun find(key: ByteArray): Int {
+        val hash = hash(key, 0, key.size)
+        var slot = hash.toInt() and mask
+        while (true) {
+            val id = ids[slot]
+            if (id == EMPTY) return -1
+            if (hashes[slot] == hash && directory.nameEquals(id, key)) return id
+            slot = (slot + 1) and mask
+        }
+    }
+
+    operator fun contains(name: String): Boolean = find(Directory.collationKey(name)) >= 0
+
+    private fun insert(id: Int) {
+        val hash = hash(directory.keyArena, directory.keyStart(id), directory.keyEnd(id))
+        var slot = hash.toInt() and mask
+        while (!IDS.compareAndSet(ids, slot, EMPTY, id)) slot = (slot + 1) and mask
+        hashes[slot] = hash
+    }
+
+    companion object {
+        private const val EMPTY = -1
+        private val IDS = MethodHandles.arrayElementVarHandle(IntArray::class.java)
+
+        /** Builds the index at a load factor of at most 0.5; [parallel] spreads the inserts over the common pool. */
+        fun build(directory: Directory, parallel: Boolean = true): NameHashIndex {
+            val index = NameHashIndex(directory, Integer.highestOneBit(maxOf(1, directory.size) * 2 - 1) shl 1)
+            val ids = IntStream.range(0, directory.size)
+            (if (parallel) ids.parallel() else ids).forEach { index.insert(it) }
+            return index
+        }
+
+        /** FNV-1a followed by the murmur3 finalizer, so the low bits used for the slot are well mixed. */
+        fun hash(bytes: ByteArray, from: Int, to: Int): Long {
+            var h = -0x340d631b7bdddcdbL
+            for (i in from until to) {
+                h = (h xor (bytes[i].toLong() and 0xFF)) * 0x100000001b3L
+            }
+            h = (h xor (h ushr 33)) * -0xae502812aa7333L
+            h = (h xor (h ushr 33)) * -0x3b314601e57a13adL
+            return h xor (h ushr 33)
+        }
+
+        /** Rough size of a `HashMap<String, Int>` over [directory] on a 64-bit JVM with compressed oops. */
+        fun hashMapFootprintBytes(directory: Directory): Long {
+            val table = Integer.highestOneBit(maxOf(1, (directory.size / 0.75).toInt()) * 2 - 1).toLong() * 4
+            val entries = directory.indices.sumOf { id ->
+                val nameBytes = 16L + (directory.nameLength(id) + 7) / 8 * 8
+                32L + 24L + nameBytes + if (id < 128) 0L else 16L // node + String + byte[] + boxed Integer
+            }
+            return table + entries
+        }
+    }
+}
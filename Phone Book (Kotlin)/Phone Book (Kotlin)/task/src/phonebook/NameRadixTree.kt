@@ -0,0 +1,207 @@
+package phonebook
+
+import java.util.Arrays
+
+/**
+ * Radix tree from collation key to entry ids. Names sharing a prefix share the nodes for it, and each edge label
+ * is stored once in [labels], so common first names cost their bytes only once. Nodes live in parallel arrays;
+ * the children of a node are allocated next to each other and sorted by their first label byte, so finding a
+ * child is a binary search.
+ *
+ * The entry ids are kept in name order in [ids]. Every subtree covers one contiguous range of it, so a prefix
+ * lookup returns every entry, duplicate names included, without walking the subtree.
+ */
+class NameRadixTree private constructor(capacity: Int) {
+    private var labels = ByteArray(maxOf(16, capacity))
+    private var labelsSize = 0
+    private var labelStart = IntArray(capacity)
+    private var labelEnd = IntArray(capacity)
+    private var firstChild = IntArray(capacity)
+    private var childCount = IntArray(capacity)
+    /** A subtree holds `ids[rangeStart until rangeEnd]`; those in `ids[rangeStart until valueEnd]` end at its node. */
+    private var rangeStart = IntArray(capacity)
+    private var rangeEnd = IntArray(capacity)
+    private var valueEnd = IntArray(capacity)
+    private var ids = IntArray(0)
+
+    var nodeCount = 1
+        private set
+
+    val footprintBytes: Long get() = labels.size + (nodeCount * 7L + ids.size) * Int.SIZE_BYTES
+
+    /** Id of an entry whose collation key is [key], or -1. */
+    fun find(key: ByteArray): Int {
+        val node = locate(key, prefix = false)
+        return if (node < 0) -1 else value(node)
+    }
+
+    operator fun contains(name: String): Boolean = find(Directory.collationKey(name)) >= 0
+
+    /** Ids of up to [limit] entries whose name starts with [prefix], in name order. */
+    fun findAllStartingWith(prefix: String, limit: Int = Int.MAX_VALUE): List<Int> {
+        val node = locate(Directory.collationKey(prefix), prefix = true)
+        if (node < 0) return emptyList()
+        val to = rangeStart[node] + minOf(rangeEnd[node] - rangeStart[node], limit)
+        return ids.asList().subList(rangeStart[node], to)
+    }
+
+    /**
+     * Id of the entry whose key is closest to [name]'s key by Levenshtein distance, if that distance is at most
+     * [maxDistance]; -1 otherwise. Distances count UTF-8 bytes of the keys, so a non-ASCII letter swapped
+     * for another costs up to two edits.
+     */
+    fun findClosest(name: String, maxDistance: Int): Int {
+        val target = Directory.collationKey(name)
+        val exact = find(target)
+        return if (exact >= 0 || maxDistance == 0) exact else FuzzyWalk(target, maxDistance).closest()
+    }
+
+    /**
+     * Depth-first walk computing one edit-distance row per key byte, so names sharing a prefix share its rows;
+     * a branch is abandoned as soon as every cell of its row exceeds the best distance still possible.
+     */
+    private inner class FuzzyWalk(private val target: ByteArray, maxDistance: Int) {
+        private val rows = ArrayList<IntArray>()
+        private var best = -1
+        private var bestDistance = maxDistance + 1
+
+        fun closest(): Int {
+            rows.add(IntArray(target.size + 1) { it })
+            walk(0, 0)
+            return best
+        }
+
+        private fun walk(node: Int, depth: Int) {
+            var row = depth
+            for (i in labelStart[node] until labelEnd[node]) {
+                if (nextRow(row, labels[i]) >= bestDistance) return
+                row++
+            }
+            if (value(node) != NONE && rows[row][target.size] < bestDistance) {
+                best = value(node)
+                bestDistance = rows[row][target.size]
+            }
+            for (child in firstChild[node] until firstChild[node] + childCount[node]) walk(child, row)
+        }
+
+        /** Fills the row after [row] for the next key byte [b] and returns its smallest cell. */
+        private fun nextRow(row: Int, b: Byte): Int {
+            if (rows.size == row + 1) rows.add(IntArray(target.size + 1))
+            val previous = rows[row]
+            val current = rows[row + 1]
+            current[0] = previous[0] + 1
+            var smallest = current[0]
+            for (j in 1..target.size) {
+                val substitution = previous[j - 1] + if (target[j - 1] == b) 0 else 1
+                current[j] = minOf(substitution, previous[j] + 1, current[j - 1] + 1)
+                smallest = minOf(smallest, current[j])
+            }
+            return smallest
+        }
+    }
+
+    private fun value(node: Int): Int = if (valueEnd[node] > rangeStart[node]) ids[rangeStart[node]] else NONE
+
+    /** Node whose path spells [key]; with [prefix] also a node whose path only starts with it. -1 if none. */
+    private fun locate(key: ByteArray, prefix: Boolean): Int {
+        var node = 0
+        var depth = 0
+        while (true) {
+            val start = labelStart[node]
+            val length = labelEnd[node] - start
+            val matched = minOf(length, key.size - depth)
+            if (!Arrays.equals(labels, start, start + matched, key, depth, depth + matched)) return -1
+            depth += matched
+            if (depth == key.size) return if (prefix || matched == length) node else -1
+            node = child(node, key[depth].toInt() and 0xFF)
+            if (node < 0) return -1
+        }
+    }
+
+    private fun child(node: Int, b: Int): Int {
+        val from = firstChild[node]
+        val to = from + childCount[node]
+        val position = lowerBound(from, to) { (labels[labelStart[it]].toInt() and 0xFF) - b }
+        return if (position < to && (labels[labelStart[position]].toInt() and 0xFF) == b) position else -1
+    }
+
+    /** Fills [node] from the keys of `sorted[lo until hi]`, which all share their first [depth] bytes. */
+    private fun build(directory: Directory, sorted: IntArray, node: Int, lo: Int, hi: Int, depth: Int) {
+        val first = sorted[lo]
+        val end = depth + commonPrefix(directory, first, sorted[hi - 1], depth)
+        addLabel(node, directory.keyArena, directory.keyStart(first) + depth, directory.keyStart(first) + end)
+
+        var i = lo
+        while (i < hi && directory.keyLength(sorted[i]) == end) i++ // every entry with exactly this name
+        rangeStart[node] = lo
+        rangeEnd[node] = hi
+        valueEnd[node] = i
+
+        var groups = 0
+        var group = i
+        while (group < hi) {
+            groups++
+            group = nextGroup(directory, sorted, group, hi, end)
+        }
+        firstChild[node] = nodeCount
+        childCount[node] = groups
+        nodeCount += groups
+
+        var child = firstChild[node]
+        while (i < hi) {
+            val next = nextGroup(directory, sorted, i, hi, end)
+            build(directory, sorted, child++, i, next, end)
+            i = next
+        }
+    }
+
+    private fun nextGroup(directory: Directory, sorted: IntArray, from: Int, hi: Int, depth: Int): Int {
+        val b = directory.keyArena[directory.keyStart(sorted[from]) + depth]
+        var i = from + 1
+        while (i < hi && directory.keyArena[directory.keyStart(sorted[i]) + depth] == b) i++
+        return i
+    }
+
+    private fun commonPrefix(directory: Directory, a: Int, b: Int, depth: Int): Int {
+        val aFrom = directory.keyStart(a) + depth
+        val bFrom = directory.keyStart(b) + depth
+        val length = minOf(directory.keyEnd(a) - aFrom, directory.keyEnd(b) - bFrom)
+        val mismatch = Arrays.mismatch(directory.keyArena, aFrom, aFrom + length, directory.keyArena, bFrom, bFrom + length)
+        return if (mismatch < 0) length else mismatch
+    }
+
+    private fun addLabel(node: Int, bytes: ByteArray, from: Int, to: Int) {
+        if (labelsSize + to - from > labels.size) labels = labels.copyOf(maxOf(labels.size * 2, labelsSize + to - from))
+        System.arraycopy(bytes, from, labels, labelsSize, to - from)
+        labelStart[node] = labelsSize
+        labelsSize += to - from
+        labelEnd[node] = labelsSize
+    }
+
+    private fun trim() {
+        labels = labels.copyOf(labelsSize)
+        labelStart = labelStart.copyOf(nodeCount)
+        labelEnd = labelEnd.copyOf(nodeCount)
+        firstChild = firstChild.copyOf(nodeCount)
+        childCount = childCount.copyOf(nodeCount)
+        rangeStart = rangeStart.copyOf(nodeCount)
+        rangeEnd = rangeEnd.copyOf(nodeCount)
+        valueEnd = valueEnd.copyOf(nodeCount)
+    }
+
+    companion object {
+        private const val NONE = -1
+
+        /** Sorts the names once, then builds the tree top-down; a tree over n names has fewer than 2n nodes. */
+        fun build(directory: Directory): NameRadixTree {
+            val tree = NameRadixTree(2 * directory.size + 1)
+            if (directory.size > 0) {
+                val sorted = IntArray(directory.size) { it }.also { parallelQuicksort(directory, it) }
+                tree.build(directory, sorted, 0, 0, sorted.size, 0)
+                tree.ids = sorted
+            }
+            tree.trim()
+            return tree
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package phonebook
+
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveAction
+
+/** Sorts [ids] in place by name, splitting partitions across [pool]. */
+fun parallelQuicksort(directory: Directory, ids: IntArray, pool: ForkJoinPool = ForkJoinPool.commonPool()) =
+    pool.invoke(QuickSortAction(directory, ids, 0, ids.size))
+
+/** Three-way quicksort of `ids[from until to]` with a median-of-three pivot and an insertion sort cutoff. */
+class QuickSortAction(
+    private val directory: Directory,
+    private val ids: IntArray,
+    private val from: Int,
+    private val to: Int
+) : RecursiveAction() {
+
+    override fun compute() {
+        val forked = mutableListOf<QuickSortAction>()
+        var low = from
+        var high = to
+        while (high - low > INSERTION_SORT_THRESHOLD) {
+            val pivot = medianOfThree(low, low + (high - low) / 2, high - 1)
+
+            // ids[low until lt] < pivot, ids[lt until i] == pivot, ids[gt until high] > pivot
+            var lt = low
+            var gt = high
+            var i = low
+            while (i < gt) {
+                val cmp = directory.compareNames(ids[i], pivot)
+                when {
+                    cmp < 0 -> swap(lt++, i++)
+                    cmp > 0 -> swap(i, --gt)
+                    else -> i++
+                }
+            }
+
+            // fork the smaller side when it is worth a task, keep looping on the larger one
+            if (lt - low < high - gt) {
+                sortPart(low, lt, forked)
+                low = gt
+            } else {
+                sortPart(gt, high, forked)
+                high = lt
+            }
+        }
+        insertionSort(low, high)
+        forked.forEach { it.join() }
+    }
+
+    private fun sortPart(from: Int, to: Int, forked: MutableList<QuickSortAction>) {
+        val part = QuickSortAction(directory, ids, from, to)
+        if (to - from > PARALLEL_THRESHOLD) {
+            part.fork()
+            forked.add(part)
+        } else {
+            part.compute()
+        }
+    }
+
+    private fun medianOfThree(a: Int, b: Int, c: Int): Int {
+        val x = ids[a]
+        val y = ids[b]
+        val z = ids[c]
+        return if (directory.compareNames(x, y) < 0) {
+            when {
+                directory.compareNames(y, z) < 0 -> y
+                directory.compareNames(x, z) < 0 -> z
+                else -> x
+            }
+        } else {
+            when {
+                directory.compareNames(x, z) < 0 -> x
+                directory.compareNames(y, z) < 0 -> z
+                else -> y
+            }
+        }
+    }
+
+    private fun insertionSort(from: Int, to: Int) {
+        for (i in from + 1 until to) {
+            val id = ids[i]
+            var j = i - 1
+            while (j >= from && directory.compareNames(ids[j], id) > 0) {
+                ids[j + 1] = ids[j]
+                j--
+            }
+            ids[j + 1] = id
+        }
+    }
+
+    private fun swap(i: Int, j: Int) {
+        ids[i] = ids[j].also { ids[j] = ids[i] }
+    }
+
+    companion object {
+        private const val INSERTION_SORT_THRESHOLD = 24
+        private const val PARALLEL_THRESHOLD = 1 shl 13
+    }
+}
@@ -0,0 +1,48 @@
+package phonebook
+
+import java.lang.invoke.MethodHandles
+import java.nio.ByteOrder
+import java.util.Arrays
+
+private val LONGS = MethodHandles.byteArrayViewVarHandle(LongArray::class.java, ByteOrder.LITTLE_ENDIAN)
+private const val ONES = 0x0101010101010101L
+private const val HIGHS = ONES shl 7
+
+/**
+ * Whether any collation key in [directory] contains [target], scanning the key arena as one contiguous byte
+ * range eight bytes at a time (SWAR: SIMD within a register). Each step loads the words at `p` and
+ * `p + target.size - 1`, and a zero-byte test on their XOR with the broadcast first and last target bytes
+ * marks every start position whose first and last bytes both match; only those are verified in full, and a
+ * match must not cross an entry boundary. The tail shorter than a word falls back to a scalar loop.
+ */
+fun swarContains(directory: Directory, target: ByteArray): Boolean {
+    if (directory.size == 0) return false
+    if (target.isEmpty()) return true
+    val arena = directory.keyArena
+    val lastOffset = target.size - 1
+    val limit = directory.keyEnd(directory.size - 1) - lastOffset
+    val firstPattern = ONES * (target[0].toLong() and 0xFF)
+    val lastPattern = ONES * (target[lastOffset].toLong() and 0xFF)
+
+    var p = 0
+    while (p + Long.SIZE_BYTES <= limit) {
+        val x = ((LONGS.get(arena, p) as Long) xor firstPattern) or ((LONGS.get(arena, p + lastOffset) as Long) xor lastPattern)
+        var candidates = (x - ONES) and x.inv() and HIGHS
+        while (candidates != 0L) {
+            if (matchesAt(directory, p + (java.lang.Long.numberOfTrailingZeros(candidates) ushr 3), target)) return true
+            candidates = candidates and (candidates - 1)
+        }
+        p += Long.SIZE_BYTES
+    }
+    while (p < limit) {
+        if (arena[p] == target[0] && arena[p + lastOffset] == target[lastOffset] && matchesAt(directory, p, target)) return true
+        p++
+    }
+    return false
+}
+
+private fun matchesAt(directory: Directory, start: Int, target: ByteArray): Boolean {
+    if (!Arrays.equals(directory.keyArena, start, start + target.size, target, 0, target.size)) return false
+    val id = lowerBound(0, directory.size) { if (directory.keyEnd(it) <= start) -1 else 1 }
+    return start + target.size <= directory.keyEnd(id)
+}
@@ -0,0 +1,83 @@
+package phonebook
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Single lookups against a synthetic directory of [size] entries, cycling through a fixed set of queries of
+ * which half are present in the directory. Run with `./gradlew :benchmark:jmh` (the gc profiler is enabled
+ * in `benchmark/build.gradle`).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class SearchBenchmark {
+
+    @Param("10000", "100000", "1000000")
+    var size: Int = 0
+
+    private lateinit var directory: Directory
+    private lateinit var sortedIds: IntArray
+    private lateinit var jumpSearch: JumpSearch
+    private lateinit var hashMap: HashMap<String, Int>
+    private lateinit var hashIndex: NameHashIndex
+    private lateinit var queries: List<String>
+    private lateinit var queryBytes: List<ByteArray>
+    private var next = 0
+
+    @Setup
+    fun setUp() {
+        val generator = DatasetGenerator(SEED, DatasetGenerator.Distribution.ZIPF)
+        directory = syntheticDirectory(size, generator)
+        sortedIds = IntArray(directory.size) { it }.also { parallelQuicksort(directory, it) }
+        jumpSearch = JumpSearch(SortedKeys(directory, sortedIds))
+        hashMap = HashMap<String, Int>(directory.size).also { map -> directory.indices.forEach { map[directory.key(it)] = it } }
+        hashIndex = NameHashIndex.build(directory)
+
+        val random = Random(SEED + 1)
+        queries = List(QUERY_COUNT) { i ->
+            if (i % 2 == 0) directory.name(random.nextInt(directory.size)) else generator.missingName(i.toLong(), size.toLong())
+        }
+        queryBytes = queries.map { Directory.collationKey(it) }
+    }
+
+    private fun nextQuery(): Int = next.also { next = (next + 1) % QUERY_COUNT }
+
+    @Benchmark
+    fun linearSearch(): Boolean = linearSearch(directory, queryBytes[nextQuery()])
+
+    @Benchmark
+    fun jumpSearch(): Int = jumpSearch.find(queryBytes[nextQuery()])
+
+    @Benchmark
+    fun binarySearch(): Int = binarySearch(directory, sortedIds, queryBytes[nextQuery()], 0, sortedIds.size - 1)
+
+    @Benchmark
+    fun hashMapSearch(): Int? = hashMap[Directory.collate(queries[nextQuery()])]
+
+    @Benchmark
+    fun hashIndexSearch(): Int = hashIndex.find(queryBytes[nextQuery()])
+
+    companion object {
+        private const val SEED = 42L
+        private const val QUERY_COUNT = 1024
+        fun syntheticDirectory(size: Int, generator: DatasetGenerator): Directory {
+            val arena = java.io.ByteArrayOutputStream()
+            val offsets = IntArray(size + 1)
+            val phones = LongArray(size) { generator.phone(it.toLong()) }
+            for (i in 0 until size) {
+                arena.write(generator.name(i.toLong()).encodeToByteArray())
+                offsets[i + 1] = arena.size()
+            }
+            return Directory(size, phones, arena.toByteArray(), offsets)
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package sorting
+
+import java.io.BufferedReader
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileNotFoundException
+import java.io.Writer
+import java.util.PriorityQueue
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.Semaphore
+
+/** Binary encoding of the values written to run files, plus an estimate of the heap one value takes. */
+interface RunCodec<T> {
+    fun write(out: DataOutputStream, value: T)
+    fun read(input: DataInputStream): T
+    fun heapSize(value: T): Long
+}
+
+object LongCodec : RunCodec<Long> {
+    override fun write(out: DataOutputStream, value: Long) = out.writeLong(value)
+    override fun read(input: DataInputStream): Long = input.readLong()
+    override fun heapSize(value: Long): Long = 24
+}
+
+object StringCodec : RunCodec<String> {
+    override fun write(out: DataOutputStream, value: String) {
+        val bytes = value.encodeToByteArray()
+        out.writeInt(bytes.size)
+        out.write(bytes)
+    }
+
+    override fun read(input: DataInputStream): String = ByteArray(input.readInt()).also { input.readFully(it) }.decodeToString()
+    override fun heapSize(value: String): Long = 56 + 2L * value.length
+}
+
+/** A distinct value and how many times it occurred. */
+class Counted<T>(val value: T, val count: Long)
+
+class CountedCodec<T>(private val codec: RunCodec<T>) : RunCodec<Counted<T>> {
+    override fun write(out: DataOutputStream, value: Counted<T>) {
+        out.writeLong(value.count)
+        codec.write(out, value.value)
+    }
+
+    override fun read(input: DataInputStream): Counted<T> {
+        val count = input.readLong()
+        return Counted(codec.read(input), count)
+    }
+
+    override fun heapSize(value: Counted<T>): Long = 32 + codec.heapSize(value.value)
+}
+
+/**
+ * Sorts [values] while holding about [memoryLimit] bytes of them in memory. The input is cut into chunks that
+ * are sorted and spilled to temporary run files on [parallelism] threads while the next chunk is being read;
+ * at most [parallelism] chunks are in flight, so each gets `memoryLimit / (parallelism + 1)` bytes.
+ */
+fun <T> externalSort(
+    values: Sequence<T>,
+    codec: RunCodec<T>,
+    comparator: Comparator<in T>,
+    memoryLimit: Long,
+    parallelism: Int = Runtime.getRuntime().availableProcessors()
+): SortedRuns<T> {
+    val chunkLimit = maxOf(1L, memoryLimit / (parallelism + 1))
+    val executor = Executors.newFixedThreadPool(parallelism)
+    val inFlight = Semaphore(parallelism)
+    val spills = mutableListOf<Future<File>>()
+    var count = 0L
+    try {
+        var chunk = ArrayList<T>()
+        var chunkBytes = 0L
+        fun spill() {
+            val full = chunk
+            inFlight.acquire()
+            spills.add(executor.submit(Callable {
+                try {
+                    spillRun(full, codec, comparator)
+                } finally {
+                    inFlight.release()
+                }
+            }))
+            chunk = ArrayList()
+            chunkBytes = 0L
+        }
+        for (value in values) {
+            chunk.add(value)
+            count++
+            chunkBytes += codec.heapSize(value)
+            if (chunkBytes >= chunkLimit) spill()
+        }
+        if (chunk.isNotEmpty()) spill()
+        return SortedRuns(spills.map { it.get() }, count, codec, comparator, memoryLimit)
+    } catch (e: Exception) {
+        spills.forEach { spill -> runCatching { spill.get().delete() } }
+        throw e
+    } finally {
+        executor.shutdown()
+    }
+}
+
+private fun <T> spillRun(chunk: ArrayList<T>, codec: RunCodec<T>, comparator: Comparator<in T>): File {
+    chunk.sortWith(comparator)
+    val file = File.createTempFile("sort-run", ".bin")
+    DataOutputStream(file.outputStream().buffered(1 shl 16)).use { out ->
+        out.writeLong(chunk.size.toLong())
+        chunk.forEach { codec.write(out, it) }
+    }
+    return file
+}
+
+/** Most run files merged at once; more runs are first merged in passes, so a merge never needs more open files. */
+private const val MAX_FAN_IN = 64
+
+/**
+ * Sorted run files of [count] values in total; [values] merges them with a k-way heap merge. Beyond [MAX_FAN_IN]
+ * runs, groups of [MAX_FAN_IN] are first merged into longer runs until few enough are left. The read buffers of
+ * one merge take at most a quarter of [memoryLimit], so they fit next to a sort that consumes the merged values.
+ */
+class SortedRuns<T>(
+    runs: List<File>,
+    val count: Long,
+    private val codec: RunCodec<T>,
+    private val comparator: Comparator<in T>,
+    memoryLimit: Long
+) : Closeable {
+    private var runs = runs
+    private val files = runs.toMutableSet()
+    private val opened = mutableListOf<DataInputStream>()
+    private val bufferSize = (memoryLimit / 4 / MAX_FAN_IN).coerceIn(MIN_BUFFER_SIZE, MAX_BUFFER_SIZE).toInt()
+
+    fun values(): Sequence<T> = sequence {
+        while (runs.size > MAX_FAN_IN) runs = runs.chunked(MAX_FAN_IN).map { group -> mergeToRun(group) }
+        yieldAll(merge(runs.map { open(it) }))
+    }
+
+    private fun open(run: File): RunCursor<T> =
+        RunCursor(DataInputStream(run.inputStream().buffered(bufferSize)).also { opened.add(it) }, codec)
+
+    private fun merge(cursors: List<RunCursor<T>>): Sequence<T> = sequence {
+        val heap = PriorityQueue<RunCursor<T>>(maxOf(1, cursors.size)) { a, b -> comparator.compare(a.value, b.value) }
+        cursors.forEach { if (it.advance()) heap.add(it) }
+        while (heap.isNotEmpty()) {
+            val cursor = heap.poll()
+            yield(cursor.value)
+            if (cursor.advance()) heap.add(cursor)
+        }
+    }
+
+    private fun mergeToRun(group: List<File>): File {
+        if (group.size == 1) return group.single()
+        val cursors = group.map { open(it) }
+        val file = File.createTempFile("sort-run", ".bin").also { files.add(it) }
+        DataOutputStream(file.outputStream().buffered(bufferSize)).use { out ->
+            out.writeLong(cursors.sumOf { it.remaining })
+            merge(cursors).forEach { codec.write(out, it) }
+        }
+        cursors.forEach { it.close() }
+        opened.removeAll(cursors.map { it.input }.toSet())
+        group.forEach { it.delete() }
+        files.removeAll(group.toSet())
+        return file
+    }
+
+    override fun close() {
+        opened.forEach { it.close() }
+        files.forEach { it.delete() }
+    }
+
+    private companion object {
+        const val MIN_BUFFER_SIZE = 4096L
+        const val MAX_BUFFER_SIZE = 1L shl 16
+    }
+}
+
+private class RunCursor<T>(val input: DataInputStream, private val codec: RunCodec<T>) : Closeable {
+    var remaining = input.readLong()
+        private set
+
+    @Suppress("UNCHECKED_CAST")
+    var value: T = null as T
+        private set
+
+    fun advance(): Boolean {
+        if (remaining == 0L) return false
+        value = codec.read(input)
+        remaining--
+        return true
+    }
+
+    override fun close() = input.close()
+}
+
+/** Collapses each run of equal adjacent [values] into one [Counted]. */
+fun <T> runLengths(values: Sequence<T>, comparator: Comparator<in T>): Sequence<Counted<T>> = sequence {
+    val iterator = values.iterator()
+    if (!iterator.hasNext()) return@sequence
+    var current = iterator.next()
+    var count = 1L
+    for (value in iterator) {
+        if (comparator.compare(current, value) == 0) {
+            count++
+        } else {
+            yield(Counted(current, count))
+            current = value
+            count = 1L
+        }
+    }
+    yield(Counted(current, count))
+}
+
+/** Streams the input and output of the sort instead of holding them in memory, for inputs larger than the heap. */
+fun execExternalSort(
+    sortingType: String,
+    dataType: String,
+    inputFile: String?,
+    outputFile: String?,
+    memoryLimit: Long,
+    parallelism: Int
+) {
+    val reader: BufferedReader = try {
+        inputFile?.let { File(it).bufferedReader() } ?: System.`in`.bufferedReader()
+    } catch (e: FileNotFoundException) {
+        println("Input file not found!")
+        return
+    }
+    val writer = outputFile?.let { File(it).bufferedWriter() } ?: System.out.bufferedWriter()
+    try {
+        when (dataType) {
+            "long" -> writeSorted(
+                words(reader).mapNotNull { it.toLongOrNull() }, LongCodec, naturalOrder(), sortingType, memoryLimit, parallelism, writer, " "
+            ) { "Total numbers: $it." }
+            "line" -> writeSorted(
+                reader.lineSequence(), StringCodec, naturalOrder(), sortingType, memoryLimit, parallelism, writer, "\n"
+            ) { "Total lines: $it" }
+            else -> writeSorted(
+                words(reader), StringCodec, naturalOrder(), sortingType, memoryLimit, parallelism, writer, " "
+            ) { "Total words: $it." }
+        }
+    } finally {
+        reader.close()
+        if (outputFile != null) writer.close() else writer.flush()
+    }
+}
+
+private fun <T> writeSorted(
+    values: Sequence<T>,
+    codec: RunCodec<T>,
+    comparator: Comparator<in T>,
+    sortingType: String,
+    memoryLimit: Long,
+    parallelism: Int,
+    out: Writer,
+    separator: String,
+    total: (Long) -> String
+) {
+    externalSort(values, codec, comparator, memoryLimit, parallelism).use { sorted ->
+        out.write(total(sorted.count))
+        out.write("\n")
+        if (sortingType == "natural") {
+            out.write("Sorted data:")
+            sorted.values().forEach {
+                out.write(separator)
+                out.write(it.toString())
+            }
+            out.write("\n")
+        } else {
+            val byCount = compareBy<Counted<T>> { it.count }.thenBy(comparator) { it.value }
+            externalSort(runLengths(sorted.values(), comparator), CountedCodec(codec), byCount, memoryLimit, parallelism).use { counted ->
+                counted.values().forEach {
+                    val percentage = (it.count.toDouble() / sorted.count * 100).toInt()
+                    out.write("${it.value}: ${it.count} time(s), $percentage%\n")
+                }
+            }
+        }
+    }
+}
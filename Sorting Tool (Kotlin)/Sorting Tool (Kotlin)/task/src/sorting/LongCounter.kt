@@ -0,0 +1,87 @@
+package sorting
+
+/**
+ * Occurrence counts of `long` values in an open-addressing hash table with linear probing: two primitive
+ * arrays, no entry objects and no boxing. A slot is empty while its count is 0, so every key value is usable.
+ */
+class LongCounter(expectedKeys: Int = 16) {
+    private var keys: LongArray
+    private var counts: IntArray
+    private var mask: Int
+
+    var size = 0
+        private set
+
+    init {
+        val capacity = Integer.highestOneBit(maxOf(16, expectedKeys * 2 - 1)) shl 1
+        keys = LongArray(capacity)
+        counts = IntArray(capacity)
+        mask = capacity - 1
+    }
+
+    fun increment(key: Long) = add(key, 1)
+
+    fun add(key: Long, count: Int) {
+        var slot = slotOf(key)
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                counts[slot] += count
+                return
+            }
+            slot = (slot + 1) and mask
+        }
+        keys[slot] = key
+        counts[slot] = count
+        if (++size * 2 > keys.size) grow()
+    }
+
+    fun addAll(other: LongCounter) {
+        for (slot in other.keys.indices) if (other.counts[slot] != 0) add(other.keys[slot], other.counts[slot])
+    }
+
+    operator fun get(key: Long): Int {
+        var slot = slotOf(key)
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) return counts[slot]
+            slot = (slot + 1) and mask
+        }
+        return 0
+    }
+
+    /**
+     * Visits every distinct key by ascending count and then ascending key, the `byCount` report order. The
+     * keys are radix sorted, then `count shl 32 or rank` is radix sorted so both orders come from one long.
+     */
+    fun forEachByCount(action: (key: Long, count: Int) -> Unit) {
+        val distinct = LongArray(size)
+        var n = 0
+        for (slot in keys.indices) if (counts[slot] != 0) distinct[n++] = keys[slot]
+        radixSort(distinct)
+        val order = LongArray(size) { (get(distinct[it]).toLong() shl 32) or it.toLong() }
+        radixSort(order)
+        for (entry in order) action(distinct[(entry and 0xFFFFFFFFL).toInt()], (entry ushr 32).toInt())
+    }
+
+    private fun slotOf(key: Long): Int {
+        // fmix64 from MurmurHash3, so sequential or clustered numbers spread over the whole table
+        var h = key
+        h = (h xor (h ushr 33)) * -0xae502812aa7333L
+        h = (h xor (h ushr 33)) * -0x3b314601e57a13adL
+        return (h xor (h ushr 33)).toInt() and mask
+    }
+
+    private fun grow() {
+        val oldKeys = keys
+        val oldCounts = counts
+        keys = LongArray(oldKeys.size * 2)
+        counts = IntArray(oldKeys.size * 2)
+        mask = keys.size - 1
+        for (i in oldKeys.indices) {
+            if (oldCounts[i] == 0) continue
+            var slot = slotOf(oldKeys[i])
+            while (counts[slot] != 0) slot = (slot + 1) and mask
+            keys[slot] = oldKeys[i]
+            counts[slot] = oldCounts[i]
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package sorting
+
+import java.io.ByteArrayOutputStream
+import java.io.InputStream
+
+/** Growable `long[]`, so numbers are never boxed on their way from the input to the sort. */
+class LongList(capacity: Int = 1024) {
+    var values = LongArray(capacity)
+        private set
+    var size = 0
+        private set
+
+    fun add(value: Long) {
+        if (size == values.size) values = values.copyOf(maxOf(16, values.size + (values.size shr 1)))
+        values[size++] = value
+    }
+
+    fun toLongArray(): LongArray = values.copyOf(size)
+}
+
+/**
+ * Parses every whitespace-separated token of [input] that is a valid long straight from the bytes, skipping all
+ * other tokens - the same tokens `split("\\s+")` followed by `toLongOrNull()` would keep, without creating a
+ * `String` per token. Tokens of an optional sign and ASCII digits are parsed in place; a token with non-ASCII
+ * bytes (which may be Unicode digits such as `٣`) is decoded and handed to `toLongOrNull()` itself.
+ */
+fun readLongs(input: InputStream): LongArray {
+    val numbers = LongList()
+    val chunk = ByteArray(1 shl 16)
+    // bytes of the current token from earlier chunks, needed if it turns out to be a non-ASCII token
+    val carry = ByteArrayOutputStream()
+    // the value is accumulated negatively, like Long.parseLong, so Long.MIN_VALUE parses without overflow
+    var value = 0L
+    var negative = false
+    var digits = 0
+    var valid = true
+    var nonAscii = false
+    var inToken = false
+    var tokenStart = 0
+    var read = input.read(chunk)
+    while (read >= 0) {
+        for (i in 0 until read) {
+            val b = chunk[i].toInt()
+            if (b == ' '.code || b in 0x09..0x0D) {
+                if (inToken && nonAscii) {
+                    carry.write(chunk, tokenStart, i - tokenStart)
+                    carry.toString(Charsets.UTF_8).toLongOrNull()?.let { numbers.add(it) }
+                } else if (inToken && valid && digits > 0) {
+                    numbers.add(if (negative) value else -value)
+                }
+                carry.reset()
+                value = 0L
+                negative = false
+                digits = 0
+                valid = true
+                nonAscii = false
+                inToken = false
+                continue
+            }
+            if (!inToken) {
+                inToken = true
+                tokenStart = i
+                if (b == '-'.code || b == '+'.code) {
+                    negative = b == '-'.code
+                    continue
+                }
+            }
+            if (!valid) continue
+            if (b < 0) {
+                nonAscii = true
+                valid = false
+                continue
+            }
+            val digit = b - '0'.code
+            val limit = if (negative) Long.MIN_VALUE else -Long.MAX_VALUE
+            if (digit !in 0..9 || value < limit / 10 || value * 10 < limit + digit) {
+                valid = false
+                continue
+            }
+            value = value * 10 - digit
+            digits++
+        }
+        if (inToken && (valid || nonAscii)) carry.write(chunk, tokenStart, read - tokenStart)
+        tokenStart = 0
+        read = input.read(chunk)
+    }
+    if (inToken && nonAscii) {
+        carry.toString(Charsets.UTF_8).toLongOrNull()?.let { numbers.add(it) }
+    } else if (inToken && valid && digits > 0) {
+        numbers.add(if (negative) value else -value)
+    }
+    return numbers.toLongArray()
+}
+
+private const val RADIX_BITS = 11
+private const val RADIX = 1 shl RADIX_BITS
+private const val RADIX_MASK = RADIX - 1L
+private const val PASSES = (Long.SIZE_BITS + RADIX_BITS - 1) / RADIX_BITS
+
+/**
+ * Sorts `values[from until to]` ascending with an LSD radix sort over 11-bit digits (six passes). Flipping the
+ * sign bit makes the unsigned digit order the signed order. All digit histograms are counted in one read pass up
+ * front, and a pass whose digit is the same for every value is skipped.
+ */
+fun radixSort(values: LongArray, from: Int = 0, to: Int = values.size) {
+    val size = to - from
+    if (size < 2) return
+    val counts = Array(PASSES) { IntArray(RADIX) }
+    for (i in from until to) {
+        val key = values[i] xor Long.MIN_VALUE
+        for (pass in 0 until PASSES) counts[pass][((key ushr (pass * RADIX_BITS)) and RADIX_MASK).toInt()]++
+    }
+
+    var source = values
+    var sourceFrom = from
+    var target = LongArray(size)
+    var targetFrom = 0
+    for (pass in 0 until PASSES) {
+        val count = counts[pass]
+        val shift = pass * RADIX_BITS
+        if (count[(((source[sourceFrom] xor Long.MIN_VALUE) ushr shift) and RADIX_MASK).toInt()] == size) continue
+        var offset = targetFrom
+        for (digit in 0 until RADIX) {
+            val n = count[digit]
+            count[digit] = offset
+            offset += n
+        }
+        for (i in sourceFrom until sourceFrom + size) {
+            val value = source[i]
+            val digit = (((value xor Long.MIN_VALUE) ushr shift) and RADIX_MASK).toInt()
+            target[count[digit]++] = value
+        }
+        val swap = source
+        source = target
+        target = swap
+        val swapFrom = sourceFrom
+        sourceFrom = targetFrom
+        targetFrom = swapFrom
+    }
+    if (source !== values) System.arraycopy(source, sourceFrom, values, from, size)
+}
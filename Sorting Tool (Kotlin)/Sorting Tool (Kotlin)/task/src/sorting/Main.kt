@@ -55,57 +55,105 @@ fun main(args: Array<String>) {
         }
     } else null
 
-    args.filter { it.startsWith("-") && it !in listOf("-sortingType", "-dataType", "-inputFile", "-outputFile") }
+    val memoryLimit = if (args.contains("-memoryLimit")) {
+        val index = args.indexOf("-memoryLimit") + 1
+        val megabytes = args.getOrNull(index)?.toLongOrNull()
+        if (megabytes != null && megabytes > 0) {
+            megabytes shl 20
+        } else {
+            println("No memory limit defined!")
+            return
+        }
+    } else null
+
+    val parallelism = if (args.contains("-parallelism")) {
+        val index = args.indexOf("-parallelism") + 1
+        val threads = args.getOrNull(index)?.toIntOrNull()
+        if (threads != null && threads > 0) {
+            threads
+        } else {
+            println("No parallelism defined!")
+            return
+        }
+    } else null
+
+    args.filter {
+        it.startsWith("-") &&
+            it !in listOf("-sortingType", "-dataType", "-inputFile", "-outputFile", "-memoryLimit", "-parallelism", "-tokenizerBenchmark")
+    }
         .forEach {
             unknownArgs.add(it)
             println("\"$it\" is not a valid parameter. It will be skipped.")
         }
 
-    val input = if (inputFile != null) {
-        try {
-            File(inputFile).readLines()
-        } catch (e: FileNotFoundException) {
-            println("Input file not found!")
+    if (args.contains("-tokenizerBenchmark")) {
+        if (inputFile == null) {
+            println("No input file defined!")
             return
         }
-    } else {
-        Scanner(System.`in`).use { scanner ->
-            generateSequence { if (scanner.hasNext()) scanner.nextLine() else null }
-                .toList()
-        }
+        execTokenizerBenchmark(inputFile)
+        return
+    }
+
+    if (memoryLimit != null) {
+        execExternalSort(
+            sortingType, dataType, inputFile, outputFile, memoryLimit, parallelism ?: Runtime.getRuntime().availableProcessors()
+        )
+        return
     }
 
     val output = StringBuilder()
+    val sorter = ParallelSorter(parallelism ?: 1)
 
-    when (dataType) {
-        "long" -> {
-            val longInput = input.flatMap { it.split("\\s+".toRegex()) }
-                .filter { it.toLongOrNull() != null }
-            val numbers = longInput.map { it.toLong() }
-            val totalNumbers = numbers.size
+    if (dataType == "long") {
+        val numbers = try {
+            if (inputFile != null) File(inputFile).inputStream().use { readLongs(it) } else readLongs(System.`in`)
+        } catch (e: FileNotFoundException) {
+            println("Input file not found!")
+            return
+        }
+        val totalNumbers = numbers.size
 
-            if (sortingType == "natural") {
-                output.appendLine("Total numbers: $totalNumbers.")
-                output.appendLine("Sorted data: ${numbers.sorted().joinToString(" ")}")
-            } else {
-                val frequencyMap = numbers.groupingBy { it }.eachCount()
-                val sortedByCount = frequencyMap.entries.sortedWith(compareBy({ it.value }, { it.key }))
-                output.appendLine("Total numbers: $totalNumbers.")
-                sortedByCount.forEach { (num, count) ->
-                    val percentage = (count.toDouble() / totalNumbers * 100).toInt()
-                    output.appendLine("$num: $count time(s), $percentage%")
-                }
+        if (sortingType == "natural") {
+            sorter.sort(numbers)
+            output.appendLine("Total numbers: $totalNumbers.")
+            output.append("Sorted data: ")
+            numbers.joinTo(output, " ")
+            output.appendLine()
+        } else {
+            val counter = sorter.count(numbers)
+            output.appendLine("Total numbers: $totalNumbers.")
+            counter.forEachByCount { num, count ->
+                val percentage = (count.toDouble() / totalNumbers * 100).toInt()
+                output.appendLine("$num: $count time(s), $percentage%")
             }
         }
+        writeOutput(output, outputFile)
+        return
+    }
 
+    when (dataType) {
         "line" -> {
+            val input = if (inputFile != null) {
+                try {
+                    File(inputFile).readLines()
+                } catch (e: FileNotFoundException) {
+                    println("Input file not found!")
+                    return
+                }
+            } else {
+                Scanner(System.`in`).use { scanner ->
+                    generateSequence { if (scanner.hasNext()) scanner.nextLine() else null }
+                        .toList()
+                }
+            }
             val totalLines = input.size
             if (sortingType == "natural") {
                 output.appendLine("Total lines: $totalLines")
                 output.appendLine("Sorted data:")
-                input.sorted().forEach { output.appendLine(it) }
+                sorter.sorted(input, naturalOrder()).forEach { output.appendLine(it) }
             } else {
-                val frequencyMap = input.groupingBy { it }.eachCount()
+                val frequencyMap = sorter.eachCount(input)
                 val sortedByCount = frequencyMap.entries.sortedWith(compareBy({ it.value }, { it.key }))
                 output.appendLine("Total lines: $totalLines")
                 sortedByCount.forEach { (line, count) ->
@@ -116,18 +164,21 @@ fun main(args: Array<String>) {
         }
 
         else -> { // "word" by default
-            val totalWords = input.flatMap { it.split("\\s+".toRegex()) }.size
+            val words = try {
+                if (inputFile != null) File(inputFile).reader().use { readWords(it) } else readWords(System.`in`.reader())
+            } catch (e: FileNotFoundException) {
+                println("Input file not found!")
+                return
+            }
+            val totalWords = words.size
 
             if (sortingType == "natural") {
                 output.appendLine("Total words: $totalWords.")
-                output.appendLine(
-                    "Sorted data: ${
-                        input.flatMap { it.split("\\s+".toRegex()) }.sorted().joinToString(" ")
-                    }"
-                )
+                output.append("Sorted data: ")
+                sorter.sorted(words, naturalOrder()).joinTo(output, " ")
+                output.appendLine()
             } else {
-                val wordsList = input.flatMap { it.split("\\s+".toRegex()) }
-                val frequencyMap = wordsList.groupingBy { it }.eachCount()
+                val frequencyMap = sorter.eachCount(words)
                 val sortedByCount = frequencyMap.entries.sortedWith(compareBy({ it.value }, { it.key }))
                 output.appendLine("Total words: $totalWords.")
                 sortedByCount.forEach { (word, count) ->
@@ -138,6 +189,10 @@ fun main(args: Array<String>) {
         }
     }
 
+    writeOutput(output, outputFile)
+}
+
+private fun writeOutput(output: StringBuilder, outputFile: String?) {
     if (outputFile != null) {
         File(outputFile).writeText(output.toString())
     } else {
@@ -0,0 +1,106 @@
+package sorting
+
+import java.util.Arrays
+import java.util.concurrent.Callable
+import java.util.concurrent.ForkJoinPool
+
+/**
+ * Sorting and counting on [parallelism] threads. Sorts cut the data into one slice per thread, sort the slices
+ * concurrently and then merge neighbouring slices pairwise, every round of merges again in parallel. Counts fill
+ * one partial table per slice and merge the tables at the end, so no table is ever shared between threads.
+ * With a parallelism of 1 everything runs on the calling thread.
+ */
+class ParallelSorter(private val parallelism: Int) {
+    private val pool = if (parallelism > 1) ForkJoinPool(parallelism) else null
+
+    fun sort(values: LongArray) {
+        val bounds = slices(values.size)
+        runAll(bounds.size - 1) { radixSort(values, bounds[it], bounds[it + 1]) }
+        mergeRounds(values, LongArray(values.size), values.size, bounds) { source, target, from, middle, to ->
+            mergeLongs(source, target, from, middle, to)
+        }
+    }
+
+    fun <T> sorted(values: List<T>, comparator: Comparator<in T>): List<T> {
+        @Suppress("UNCHECKED_CAST")
+        val array = (values as List<Any?>).toTypedArray() as Array<T>
+        val bounds = slices(array.size)
+        runAll(bounds.size - 1) { Arrays.sort(array, bounds[it], bounds[it + 1], comparator) }
+        mergeRounds(array, array.copyOf(), array.size, bounds) { source, target, from, middle, to ->
+            mergeObjects(source, target, from, middle, to, comparator)
+        }
+        return array.asList()
+    }
+
+    /** Like `groupingBy { it }.eachCount()`, counted into one partial map per slice of [values]. */
+    fun <T> eachCount(values: List<T>): Map<T, Int> {
+        val bounds = slices(values.size)
+        val partials = mapAll(bounds.size - 1) { slice ->
+            HashMap<T, Int>().also { counts ->
+                for (i in bounds[slice] until bounds[slice + 1]) counts.merge(values[i], 1, Int::plus)
+            }
+        }
+        return partials.reduce { total, partial -> total.apply { partial.forEach { (value, count) -> merge(value, count, Int::plus) } } }
+    }
+
+    fun count(values: LongArray): LongCounter {
+        val bounds = slices(values.size)
+        val partials = mapAll(bounds.size - 1) { slice ->
+            LongCounter().also { counter -> for (i in bounds[slice] until bounds[slice + 1]) counter.increment(values[i]) }
+        }
+        return partials.reduce { total, partial -> total.apply { addAll(partial) } }
+    }
+
+    private fun slices(size: Int): IntArray = IntArray(parallelism + 1) { (size.toLong() * it / parallelism).toInt() }
+
+    /**
+     * Merges the sorted runs `values[bounds[i] until bounds[i + 1]]` pairwise until one run is left, ping-ponging
+     * between [values] and [buffer]; the result always ends up in [values].
+     */
+    private fun <A : Any> mergeRounds(values: A, buffer: A, size: Int, bounds: IntArray, merge: (A, A, Int, Int, Int) -> Unit) {
+        var source = values
+        var target = buffer
+        var runs = bounds
+        while (runs.size > 2) {
+            val last = runs.size - 1
+            val pairs = (last + 1) / 2
+            val current = runs
+            val from = source
+            val to = target
+            runAll(pairs) { merge(from, to, current[2 * it], current[minOf(2 * it + 1, last)], current[minOf(2 * it + 2, last)]) }
+            runs = IntArray(pairs + 1) { current[minOf(2 * it, last)] }
+            source = to
+            target = from
+        }
+        if (source !== values) System.arraycopy(source, 0, values, 0, size)
+    }
+
+    private fun mergeLongs(source: LongArray, target: LongArray, from: Int, middle: Int, to: Int) {
+        var left = from
+        var right = middle
+        for (i in from until to) {
+            target[i] = if (right >= to || (left < middle && source[left] <= source[right])) source[left++] else source[right++]
+        }
+    }
+
+    private fun <T> mergeObjects(source: Array<T>, target: Array<T>, from: Int, middle: Int, to: Int, comparator: Comparator<in T>) {
+        var left = from
+        var right = middle
+        for (i in from until to) {
+            target[i] = if (right >= to || (left < middle && comparator.compare(source[left], source[right]) <= 0)) {
+                source[left++]
+            } else {
+                source[right++]
+            }
+        }
+    }
+
+    private fun runAll(tasks: Int, body: (Int) -> Unit) {
+        mapAll(tasks, body)
+    }
+
+    private fun <R> mapAll(tasks: Int, body: (Int) -> R): List<R> {
+        if (pool == null || tasks == 1) return List(tasks, body)
+        return pool.invokeAll(List(tasks) { task -> Callable { body(task) } }).map { it.get() }
+    }
+}
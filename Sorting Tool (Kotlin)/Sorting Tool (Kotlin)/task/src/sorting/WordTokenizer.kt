@@ -0,0 +1,67 @@
+package sorting
+
+import java.io.File
+import java.io.Reader
+import java.util.Locale
+import kotlin.system.measureNanoTime
+
+/** The characters `\s` matches: space, tab, line feed, vertical tab, form feed and carriage return. */
+fun isSpace(c: Char): Boolean = c == ' ' || c in '\t'..'\r'
+
+/**
+ * Calls [action] with every whitespace-separated word of [reader], in one pass over a reused char buffer and
+ * without regex. Unlike `split("\\s+")` no empty words are produced for leading whitespace or blank lines.
+ * Only a word cut by the end of the buffer is copied through [StringBuilder]; all others become a `String`
+ * straight from the buffer.
+ */
+inline fun forEachWord(reader: Reader, action: (String) -> Unit) {
+    val chunk = CharArray(1 shl 16)
+    val carry = StringBuilder()
+    var read = reader.read(chunk)
+    while (read >= 0) {
+        var start = 0
+        for (i in 0 until read) {
+            if (!isSpace(chunk[i])) continue
+            if (carry.isNotEmpty()) {
+                carry.appendRange(chunk, start, i)
+                action(carry.toString())
+                carry.setLength(0)
+            } else if (i > start) {
+                action(String(chunk, start, i - start))
+            }
+            start = i + 1
+        }
+        carry.appendRange(chunk, start, read)
+        read = reader.read(chunk)
+    }
+    if (carry.isNotEmpty()) action(carry.toString())
+}
+
+fun readWords(reader: Reader): ArrayList<String> = ArrayList<String>().also { words -> forEachWord(reader) { words.add(it) } }
+
+fun words(reader: Reader): Sequence<String> = sequence { forEachWord(reader) { yield(it) } }
+
+/**
+ * Tokenizes [inputFile] (meant to be a corpus of several GB) once with the regex split the word mode used to
+ * do per line and once with [forEachWord], and prints the throughput of both.
+ */
+fun execTokenizerBenchmark(inputFile: String) {
+    val file = File(inputFile)
+    val megabytes = file.length() / (1024.0 * 1024.0)
+    println("Start tokenizing ${String.format(Locale.ROOT, "%.1f", megabytes)} MB (regex split)...")
+    val whitespace = "\\s+".toRegex()
+    var regexWords = 0L
+    val regexNanos = measureNanoTime {
+        file.useLines { lines -> lines.forEach { line -> regexWords += line.split(whitespace).count { it.isNotEmpty() } } }
+    }
+    println(throughput(regexWords, megabytes, regexNanos))
+
+    println("Start tokenizing ${String.format(Locale.ROOT, "%.1f", megabytes)} MB (streaming tokenizer)...")
+    var words = 0L
+    val nanos = measureNanoTime { file.reader().use { reader -> forEachWord(reader) { words++ } } }
+    println(throughput(words, megabytes, nanos))
+}
+
+private fun throughput(words: Long, megabytes: Double, nanos: Long): String = String.format(
+    Locale.ROOT, "Found %d words. Time taken: %d ms (%.1f MB/s).", words, nanos / 1_000_000, megabytes / (nanos / 1e9)
+)